@@ -0,0 +1,27 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+/**
+ * How the keys of synthetic records are distributed.
+ */
+public enum KeyDistribution {
+  // every key is equally likely
+  UNIFORM,
+  // the probability of the key k is proportional to 1 / (k + 1)^exponent, so that key 0 is the most frequent
+  ZIPF
+}
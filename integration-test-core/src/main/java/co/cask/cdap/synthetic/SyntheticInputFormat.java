@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import co.cask.cdap.api.data.batch.InputFormatProvider;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link InputFormat} of synthetic records, which are generated by the tasks while they are read, so that
+ * MapReduce and Spark programs can be loaded with any amount of data without staging it first. The records are
+ * spread evenly over the splits, and are the same for the same configuration and seed.
+ *
+ * The key of each record is drawn from a {@link KeyDistribution} over a number of keys, and is also the value of
+ * the key field of the record. The value is the text of the record, in a {@link RecordFormat}. The key and value
+ * objects are reused for all records of a split, so Spark programs must copy or transform them before caching.
+ *
+ * In a MapReduce::
+ *
+ *   getContext().addInput(Input.of("synthetic", SyntheticInputFormat.builder().setRecords(1000000).build()));
+ *
+ * In a Spark program::
+ *
+ *   Configuration conf = SyntheticInputFormat.builder().setRecords(1000000).configure(new Configuration());
+ *   jsc.newAPIHadoopRDD(conf, SyntheticInputFormat.class, LongWritable.class, Text.class);
+ */
+public class SyntheticInputFormat extends InputFormat<LongWritable, Text> {
+
+  /**
+   * Prefix of the names of all configuration properties.
+   */
+  public static final String PREFIX = "synthetic.";
+
+  public static final String RECORDS = PREFIX + "records";
+  public static final String SPLITS = PREFIX + "splits";
+  // the size of a record in bytes, which is approximate if the schema has no string field other than the key
+  public static final String RECORD_SIZE = PREFIX + "record.size";
+  public static final String KEYS = PREFIX + "keys";
+  public static final String KEY_DISTRIBUTION = PREFIX + "key.distribution";
+  public static final String ZIPF_EXPONENT = PREFIX + "zipf.exponent";
+  // the schema of the records, in JSON
+  public static final String SCHEMA = PREFIX + "schema";
+  public static final String KEY_FIELD = PREFIX + "key.field";
+  public static final String FORMAT = PREFIX + "format";
+  public static final String SEED = PREFIX + "seed";
+
+  public static final Schema DEFAULT_SCHEMA = Schema.recordOf("record",
+                                                              Schema.Field.of("key", Schema.of(Schema.Type.LONG)),
+                                                              Schema.Field.of("value", Schema.of(Schema.Type.STRING)));
+  private static final long DEFAULT_RECORDS = 1000L;
+  private static final int DEFAULT_SPLITS = 2;
+  private static final int DEFAULT_RECORD_SIZE = 100;
+  private static final long DEFAULT_KEYS = 1000L;
+  private static final double DEFAULT_ZIPF_EXPONENT = 1d;
+  private static final long DEFAULT_SEED = 0L;
+
+  /**
+   * @return a builder of the configuration of a {@link SyntheticInputFormat}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) {
+    Configuration conf = context.getConfiguration();
+    long records = conf.getLong(RECORDS, DEFAULT_RECORDS);
+    int numSplits = conf.getInt(SPLITS, DEFAULT_SPLITS);
+    int recordSize = conf.getInt(RECORD_SIZE, DEFAULT_RECORD_SIZE);
+    if (records < 0 || numSplits < 1) {
+      throw new IllegalArgumentException(String.format("Cannot generate %d synthetic records in %d splits",
+                                                       records, numSplits));
+    }
+
+    List<InputSplit> splits = new ArrayList<>(numSplits);
+    long firstRecord = 0L;
+    for (int i = 0; i < numSplits; i++) {
+      long splitRecords = records / numSplits + (i < records % numSplits ? 1 : 0);
+      splits.add(new SyntheticSplit(i, firstRecord, splitRecords, splitRecords * recordSize));
+      firstRecord += splitRecords;
+    }
+    return splits;
+  }
+
+  @Override
+  public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+    return new SyntheticRecordReader();
+  }
+
+  static SyntheticRecordGenerator createGenerator(Configuration conf, int splitIndex) throws IOException {
+    String schema = conf.get(SCHEMA);
+    return new SyntheticRecordGenerator(schema == null ? DEFAULT_SCHEMA : Schema.parseJson(schema),
+                                        conf.get(KEY_FIELD),
+                                        RecordFormat.valueOf(conf.get(FORMAT, RecordFormat.CSV.name())),
+                                        conf.getInt(RECORD_SIZE, DEFAULT_RECORD_SIZE),
+                                        KeyDistribution.valueOf(conf.get(KEY_DISTRIBUTION,
+                                                                         KeyDistribution.UNIFORM.name())),
+                                        conf.getLong(KEYS, DEFAULT_KEYS),
+                                        conf.getDouble(ZIPF_EXPONENT, DEFAULT_ZIPF_EXPONENT),
+                                        getSplitSeed(conf.getLong(SEED, DEFAULT_SEED), splitIndex));
+  }
+
+  // mixes the seed with the index of the split, so that the splits do not generate overlapping sequences
+  private static long getSplitSeed(long seed, int splitIndex) {
+    long z = seed + (splitIndex + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Builds the configuration of a {@link SyntheticInputFormat}. Properties that are not set keep their defaults:
+   * 1000 records of 100 bytes in 2 splits, with 1000 uniformly distributed keys, in {@link RecordFormat#CSV} with
+   * the {@link #DEFAULT_SCHEMA}, and a seed of 0.
+   */
+  public static final class Builder {
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the total number of records, over all splits.
+     */
+    public Builder setRecords(long records) {
+      return set(RECORDS, records);
+    }
+
+    public Builder setSplits(int splits) {
+      return set(SPLITS, splits);
+    }
+
+    /**
+     * Sets the size of each record in bytes. The strings of a record, other than its key, are sized to make up
+     * the size, so it is only approximate if the schema has no other string.
+     */
+    public Builder setRecordSize(int recordSize) {
+      return set(RECORD_SIZE, recordSize);
+    }
+
+    /**
+     * Sets the number of distinct keys, which are numbered from 0.
+     */
+    public Builder setKeys(long keys) {
+      return set(KEYS, keys);
+    }
+
+    public Builder setUniformKeys() {
+      return set(KEY_DISTRIBUTION, KeyDistribution.UNIFORM);
+    }
+
+    /**
+     * Makes the keys follow a Zipf distribution with the given exponent, so that key 0 is the most frequent.
+     * The higher the exponent, the more skewed the keys: with an exponent of 1 and 1000 keys, key 0 is about
+     * 13% of the records.
+     */
+    public Builder setZipfKeys(double exponent) {
+      set(KEY_DISTRIBUTION, KeyDistribution.ZIPF);
+      return set(ZIPF_EXPONENT, exponent);
+    }
+
+    /**
+     * Sets the schema of the records, and the field that gets the key of each record.
+     *
+     * @param schema a record of booleans, ints, longs, floats, doubles and strings
+     * @param keyField an int, long or string field of the schema
+     */
+    public Builder setSchema(Schema schema, String keyField) {
+      set(SCHEMA, schema);
+      return set(KEY_FIELD, keyField);
+    }
+
+    public Builder setFormat(RecordFormat format) {
+      return set(FORMAT, format);
+    }
+
+    public Builder setSeed(long seed) {
+      return set(SEED, seed);
+    }
+
+    /**
+     * Sets the properties of the given map whose name starts with {@link #PREFIX}, such as runtime arguments,
+     * which override the properties that were set before.
+     */
+    public Builder setProperties(Map<String, String> properties) {
+      for (Map.Entry<String, String> entry : properties.entrySet()) {
+        if (entry.getKey().startsWith(PREFIX)) {
+          this.properties.put(entry.getKey(), entry.getValue());
+        }
+      }
+      return this;
+    }
+
+    /**
+     * @return the {@link InputFormatProvider} of a {@link SyntheticInputFormat} with the configured properties
+     */
+    public InputFormatProvider build() {
+      Map<String, String> configuration = ImmutableMap.copyOf(properties);
+      return new InputFormatProvider() {
+        @Override
+        public String getInputFormatClassName() {
+          return SyntheticInputFormat.class.getName();
+        }
+
+        @Override
+        public Map<String, String> getInputFormatConfiguration() {
+          return configuration;
+        }
+      };
+    }
+
+    /**
+     * Sets the configured properties in a Hadoop configuration, for programs that create the input format
+     * themselves, such as Spark programs.
+     *
+     * @return the given configuration
+     */
+    public Configuration configure(Configuration conf) {
+      for (Map.Entry<String, String> entry : properties.entrySet()) {
+        conf.set(entry.getKey(), entry.getValue());
+      }
+      return conf;
+    }
+
+    private Builder set(String name, Object value) {
+      properties.put(name, value.toString());
+      return this;
+    }
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import javax.annotation.Nullable;
+
+/**
+ * Generates the text of synthetic records with a given schema, one record at a time, into a buffer that is reused
+ * for all records. The value of the key field is drawn from the key distribution, and the other fields have random
+ * values: non-negative numbers, doubles with three decimals, and lowercase alphanumeric strings. The strings that
+ * are not the key are sized so that every record has the configured size, unless the other fields alone are larger.
+ */
+final class SyntheticRecordGenerator {
+  private static final byte[] ALPHABET = "abcdefghijklmnopqrstuvwxyz012345".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+  // doubles are generated as thousandths below one billion, so that they are written without allocating
+  private static final long DOUBLE_SCALE = 1000L;
+  private static final long DOUBLE_BOUND = 1_000_000_000L;
+
+  private enum FieldType {
+    BOOLEAN,
+    INT,
+    LONG,
+    DOUBLE,
+    STRING
+  }
+
+  private final FieldType[] types;
+  // the name of each field followed by a colon, as written in JSON
+  private final byte[][] jsonNames;
+  private final int keyField;
+  private final RecordFormat format;
+  private final int recordSize;
+  private final long keys;
+  @Nullable
+  private final ZipfSampler zipfSampler;
+  private final SplittableRandom random;
+  // number of bytes of a record that do not belong to values, such as separators and quotes
+  private final int syntaxLength;
+  private final int paddedFields;
+
+  // the values of the fields of the current record, and their lengths in bytes
+  private final long[] values;
+  private final int[] lengths;
+  private byte[] buffer;
+  private int length;
+  private long key;
+
+  /**
+   * @param schema the schema of the records. It must be a record of booleans, ints, longs, floats, doubles and
+   *               strings, which may be nullable, although no value is ever null
+   * @param keyField the name of the field that gets the key of a record, which must be an int, a long or a string,
+   *                 or {@code null} for the first field
+   * @param seed the seed of the random values, so that the same seed always generates the same records
+   */
+  SyntheticRecordGenerator(Schema schema, @Nullable String keyField, RecordFormat format, int recordSize,
+                           KeyDistribution distribution, long keys, double zipfExponent, long seed) {
+    if (schema.getType() != Schema.Type.RECORD || schema.getFields() == null || schema.getFields().isEmpty()) {
+      throw new IllegalArgumentException("The schema of synthetic records must be a record with fields.");
+    }
+    if (keys < 1) {
+      throw new IllegalArgumentException("The number of keys must be positive, but is " + keys);
+    }
+    List<Schema.Field> fields = schema.getFields();
+    this.types = new FieldType[fields.size()];
+    this.jsonNames = new byte[fields.size()][];
+    int keyFieldIndex = keyField == null ? 0 : -1;
+    int padded = 0;
+    int syntax = format == RecordFormat.JSON ? fields.size() + 1 : fields.size() - 1;
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      types[i] = getFieldType(field);
+      jsonNames[i] = ("\"" + field.getName() + "\":").getBytes(StandardCharsets.UTF_8);
+      if (field.getName().equals(keyField)) {
+        keyFieldIndex = i;
+      }
+      if (format == RecordFormat.JSON) {
+        syntax += jsonNames[i].length + (types[i] == FieldType.STRING ? 2 : 0);
+      }
+    }
+    if (keyFieldIndex < 0) {
+      throw new IllegalArgumentException(String.format("Key field '%s' is not in the schema %s", keyField, schema));
+    }
+    FieldType keyType = types[keyFieldIndex];
+    if (keyType != FieldType.INT && keyType != FieldType.LONG && keyType != FieldType.STRING) {
+      throw new IllegalArgumentException(String.format("Key field '%s' must be an int, a long or a string, not %s",
+                                                       fields.get(keyFieldIndex).getName(), keyType));
+    }
+    if (keyType == FieldType.INT && keys - 1 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format("Key field '%s' is an int, which cannot hold %d keys",
+                                                       fields.get(keyFieldIndex).getName(), keys));
+    }
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] == FieldType.STRING && i != keyFieldIndex) {
+        padded++;
+      }
+    }
+
+    this.keyField = keyFieldIndex;
+    this.format = format;
+    this.recordSize = recordSize;
+    this.keys = keys;
+    this.zipfSampler = distribution == KeyDistribution.ZIPF ? new ZipfSampler(keys, zipfExponent) : null;
+    this.random = new SplittableRandom(seed);
+    this.syntaxLength = syntax;
+    this.paddedFields = padded;
+    this.values = new long[types.length];
+    this.lengths = new int[types.length];
+    this.buffer = new byte[Math.max(recordSize, 64)];
+  }
+
+  /**
+   * Generates the next record, which replaces the contents of the buffer.
+   */
+  void next() {
+    key = zipfSampler == null ? random.nextLong(keys) : zipfSampler.sample(random) - 1;
+
+    int total = syntaxLength;
+    for (int i = 0; i < types.length; i++) {
+      long value;
+      switch (types[i]) {
+        case BOOLEAN:
+          value = random.nextBoolean() ? 1L : 0L;
+          lengths[i] = value == 1L ? 4 : 5;
+          break;
+        case INT:
+          value = i == keyField ? key : random.nextInt() >>> 1;
+          lengths[i] = digits(value);
+          break;
+        case LONG:
+          value = i == keyField ? key : random.nextLong() >>> 1;
+          lengths[i] = digits(value);
+          break;
+        case DOUBLE:
+          value = random.nextLong(DOUBLE_BOUND);
+          lengths[i] = digits(value / DOUBLE_SCALE) + 4;
+          break;
+        default:
+          value = key;
+          // the length of padded strings is set once the length of all other values is known
+          lengths[i] = i == keyField ? digits(value) : 0;
+          break;
+      }
+      values[i] = value;
+      total += lengths[i];
+    }
+
+    // spread the rest of the record size over the strings
+    int remaining = Math.max(recordSize - total, 0);
+    int remainingFields = paddedFields;
+    for (int i = 0; i < types.length && remainingFields > 0; i++) {
+      if (types[i] == FieldType.STRING && i != keyField) {
+        lengths[i] = remaining / remainingFields;
+        remaining -= lengths[i];
+        remainingFields--;
+        total += lengths[i];
+      }
+    }
+
+    if (buffer.length < total) {
+      buffer = Arrays.copyOf(buffer, Math.max(total, 2 * buffer.length));
+    }
+    length = 0;
+    if (format == RecordFormat.JSON) {
+      buffer[length++] = '{';
+    }
+    for (int i = 0; i < types.length; i++) {
+      if (i > 0) {
+        buffer[length++] = ',';
+      }
+      if (format == RecordFormat.JSON) {
+        System.arraycopy(jsonNames[i], 0, buffer, length, jsonNames[i].length);
+        length += jsonNames[i].length;
+      }
+      writeValue(i);
+    }
+    if (format == RecordFormat.JSON) {
+      buffer[length++] = '}';
+    }
+  }
+
+  /**
+   * @return the key of the current record, between 0 and the number of keys
+   */
+  long getKey() {
+    return key;
+  }
+
+  /**
+   * @return the buffer that holds the text of the current record, from offset 0 to {@link #getLength()}
+   */
+  byte[] getBytes() {
+    return buffer;
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  private void writeValue(int field) {
+    long value = values[field];
+    switch (types[field]) {
+      case BOOLEAN:
+        for (byte b : value == 1L ? TRUE : FALSE) {
+          buffer[length++] = b;
+        }
+        break;
+      case INT:
+      case LONG:
+        writeDigits(value, lengths[field]);
+        break;
+      case DOUBLE:
+        writeDigits(value / DOUBLE_SCALE, lengths[field] - 4);
+        buffer[length++] = '.';
+        writeDigits(value % DOUBLE_SCALE, 3);
+        break;
+      default:
+        boolean json = format == RecordFormat.JSON;
+        if (json) {
+          buffer[length++] = '"';
+        }
+        if (field == keyField) {
+          writeDigits(value, lengths[field]);
+        } else {
+          writeRandomString(lengths[field]);
+        }
+        if (json) {
+          buffer[length++] = '"';
+        }
+        break;
+    }
+  }
+
+  // writes the last digits of a non-negative value, with leading zeros if it has fewer digits
+  private void writeDigits(long value, int numDigits) {
+    int end = length + numDigits;
+    for (int i = end - 1; i >= length; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length = end;
+  }
+
+  // takes five bits of a random long for each character
+  private void writeRandomString(int numChars) {
+    long bits = 0L;
+    for (int i = 0; i < numChars; i++) {
+      if (i % 12 == 0) {
+        bits = random.nextLong();
+      }
+      buffer[length++] = ALPHABET[(int) (bits & 0x1F)];
+      bits >>>= 5;
+    }
+  }
+
+  // the number of decimal digits of a non-negative value
+  private static int digits(long value) {
+    int digits = 1;
+    while (value >= 10) {
+      value /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  private static FieldType getFieldType(Schema.Field field) {
+    Schema schema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+    switch (schema.getType()) {
+      case BOOLEAN:
+        return FieldType.BOOLEAN;
+      case INT:
+        return FieldType.INT;
+      case LONG:
+        return FieldType.LONG;
+      case FLOAT:
+      case DOUBLE:
+        return FieldType.DOUBLE;
+      case STRING:
+        return FieldType.STRING;
+      default:
+        throw new IllegalArgumentException(String.format("Type %s of field '%s' is not supported for synthetic records",
+                                                         schema.getType(), field.getName()));
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+
+/**
+ * Reads the records of a {@link SyntheticSplit}, by generating them when they are read. The key and value are
+ * the same objects for all records, so they must be copied to be kept.
+ */
+public class SyntheticRecordReader extends RecordReader<LongWritable, Text> {
+  private final LongWritable key = new LongWritable();
+  private final Text value = new Text();
+  private SyntheticRecordGenerator generator;
+  private long records;
+  private long recordsRead;
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+    SyntheticSplit syntheticSplit = (SyntheticSplit) split;
+    generator = SyntheticInputFormat.createGenerator(context.getConfiguration(), syntheticSplit.getIndex());
+    records = syntheticSplit.getRecords();
+    recordsRead = 0;
+  }
+
+  @Override
+  public boolean nextKeyValue() {
+    if (recordsRead >= records) {
+      return false;
+    }
+    generator.next();
+    key.set(generator.getKey());
+    value.set(generator.getBytes(), 0, generator.getLength());
+    recordsRead++;
+    return true;
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public Text getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() {
+    return records == 0 ? 1f : (float) recordsRead / records;
+  }
+
+  @Override
+  public void close() {
+    // nothing to close
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A split of a {@link SyntheticInputFormat}, which generates a range of the synthetic records.
+ */
+public class SyntheticSplit extends InputSplit implements Writable {
+  private int index;
+  private long firstRecord;
+  private long records;
+  private long length;
+
+  // for deserialization
+  public SyntheticSplit() {
+  }
+
+  SyntheticSplit(int index, long firstRecord, long records, long length) {
+    this.index = index;
+    this.firstRecord = firstRecord;
+    this.records = records;
+    this.length = length;
+  }
+
+  /**
+   * @return the index of the split, which determines the seed of its records
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the number of records generated before this split
+   */
+  public long getFirstRecord() {
+    return firstRecord;
+  }
+
+  /**
+   * @return the number of records of this split
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  @Override
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public String[] getLocations() {
+    // records are generated by the task, so they are local to any node
+    return new String[0];
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(index);
+    out.writeLong(firstRecord);
+    out.writeLong(records);
+    out.writeLong(length);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    index = in.readInt();
+    firstRecord = in.readLong();
+    records = in.readLong();
+    length = in.readLong();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks from 1 to a number of elements from a Zipf distribution, in which the probability of rank k is
+ * proportional to 1 / k^exponent. This uses the rejection-inversion method of W. Hörmann and G. Derflinger,
+ * which takes constant time per sample and does not need a table of the probabilities of all ranks, so that it
+ * can be used with any number of elements.
+ */
+final class ZipfSampler {
+  private final long numberOfElements;
+  private final double exponent;
+  private final double hIntegralX1;
+  private final double hIntegralNumberOfElements;
+  private final double s;
+
+  ZipfSampler(long numberOfElements, double exponent) {
+    if (numberOfElements < 1) {
+      throw new IllegalArgumentException("The number of elements must be positive, but is " + numberOfElements);
+    }
+    if (!(exponent > 0)) {
+      throw new IllegalArgumentException("The exponent must be positive, but is " + exponent);
+    }
+    this.numberOfElements = numberOfElements;
+    this.exponent = exponent;
+    this.hIntegralX1 = hIntegral(1.5) - 1d;
+    this.hIntegralNumberOfElements = hIntegral(numberOfElements + 0.5);
+    this.s = 2d - hIntegralInverse(hIntegral(2.5) - h(2));
+  }
+
+  /**
+   * @return a rank between 1 and the number of elements
+   */
+  long sample(SplittableRandom random) {
+    while (true) {
+      double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+      double x = hIntegralInverse(u);
+      long k = (long) (x + 0.5);
+      // rounding errors can take k out of range
+      if (k < 1) {
+        k = 1;
+      } else if (k > numberOfElements) {
+        k = numberOfElements;
+      }
+      if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+        return k;
+      }
+    }
+  }
+
+  // the integral of h(x) = 1 / x^exponent, shifted so that it is continuous at exponent = 1
+  private double hIntegral(double x) {
+    double logX = Math.log(x);
+    return expm1OverX((1d - exponent) * logX) * logX;
+  }
+
+  private double h(double x) {
+    return Math.exp(-exponent * Math.log(x));
+  }
+
+  private double hIntegralInverse(double x) {
+    double t = x * (1d - exponent);
+    if (t < -1d) {
+      // only happens through rounding errors
+      t = -1d;
+    }
+    return Math.exp(log1pOverX(t) * x);
+  }
+
+  // log(1 + x) / x, with a Taylor expansion near 0
+  private static double log1pOverX(double x) {
+    if (Math.abs(x) > 1e-8) {
+      return Math.log1p(x) / x;
+    }
+    return 1d - x * (0.5 - x * (1d / 3d - 0.25 * x));
+  }
+
+  // (exp(x) - 1) / x, with a Taylor expansion near 0
+  private static double expm1OverX(double x) {
+    if (Math.abs(x) > 1e-8) {
+      return Math.expm1(x) / x;
+    }
+    return 1d + x * 0.5 * (1d + x / 3d * (1d + 0.25 * x));
+  }
+}
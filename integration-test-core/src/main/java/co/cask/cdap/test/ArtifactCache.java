@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import co.cask.cdap.api.Config;
+import co.cask.cdap.api.app.Application;
+import co.cask.cdap.client.ApplicationClient;
+import co.cask.cdap.client.ArtifactClient;
+import co.cask.cdap.common.ApplicationNotFoundException;
+import co.cask.cdap.common.ArtifactNotFoundException;
+import co.cask.cdap.common.test.AppJarHelper;
+import co.cask.cdap.proto.ApplicationDetail;
+import co.cask.cdap.proto.artifact.AppRequest;
+import co.cask.cdap.proto.artifact.ArtifactSummary;
+import co.cask.cdap.proto.id.ApplicationId;
+import co.cask.cdap.proto.id.ArtifactId;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Deploys applications from artifacts whose version is the hash of the application jar. The jar of each
+ * application class is only built once per JVM and kept in memory, and it is only uploaded to a namespace
+ * that does not contain the artifact yet. If the application is already deployed from the same artifact
+ * with the same config, it is not deployed again.
+ */
+public final class ArtifactCache {
+  private static final Logger LOG = LoggerFactory.getLogger(ArtifactCache.class);
+  private static final Gson GSON = new Gson();
+
+  // all artifacts are versioned 1.0.0, with the hash of the jar as suffix
+  private static final String VERSION_PREFIX = "1.0.0-";
+  private static final Map<Class<?>, AppJar> JARS = new HashMap<>();
+
+  private ArtifactCache() { }
+
+  /**
+   * Deploys an application, uploading its artifact first if the namespace of the application does not have it.
+   *
+   * @param testManager the {@link TestManager} used to deploy the application
+   * @param artifactClient the client used to look up and upload the artifact
+   * @param applicationClient the client used to look up the application
+   * @param appId the id of the application to deploy
+   * @param applicationClz the class of the application
+   * @param configObject the config of the application, or {@code null} if it has none
+   * @return the {@link ApplicationManager} of the deployed application
+   */
+  public static ApplicationManager deploy(TestManager testManager, ArtifactClient artifactClient,
+                                          ApplicationClient applicationClient, ApplicationId appId,
+                                          Class<? extends Application> applicationClz,
+                                          @Nullable Config configObject) throws Exception {
+    AppJar appJar = getJar(applicationClz);
+    ArtifactId artifactId = appId.getParent().artifact(applicationClz.getSimpleName(), appJar.getVersion());
+    ArtifactSummary artifactSummary = new ArtifactSummary(artifactId.getArtifact(), artifactId.getVersion());
+    String config = configObject == null ? null : GSON.toJson(configObject);
+
+    if (isDeployed(applicationClient, appId, artifactSummary, config)) {
+      LOG.debug("Application {} is already deployed from artifact {} with the same config.", appId, artifactId);
+      return testManager.getApplicationManager(appId);
+    }
+
+    try {
+      artifactClient.getArtifactInfo(artifactId);
+      LOG.debug("Artifact {} already exists, skipping upload.", artifactId);
+    } catch (ArtifactNotFoundException e) {
+      artifactClient.add(artifactId, null, appJar::getInput);
+    }
+    return testManager.deployApplication(appId, new AppRequest<>(artifactSummary, configObject));
+  }
+
+  private static boolean isDeployed(ApplicationClient applicationClient, ApplicationId appId,
+                                    ArtifactSummary artifactSummary, @Nullable String config) throws Exception {
+    ApplicationDetail detail;
+    try {
+      detail = applicationClient.get(appId);
+    } catch (ApplicationNotFoundException e) {
+      return false;
+    }
+    ArtifactSummary deployedArtifact = detail.getArtifact();
+    return artifactSummary.getName().equals(deployedArtifact.getName())
+      && artifactSummary.getVersion().equals(deployedArtifact.getVersion())
+      && Strings.nullToEmpty(config).equals(Strings.nullToEmpty(detail.getConfiguration()));
+  }
+
+  // builds the jar of the given application class, unless it was already built by this JVM
+  private static synchronized AppJar getJar(Class<? extends Application> applicationClz) throws IOException {
+    AppJar appJar = JARS.get(applicationClz);
+    if (appJar != null) {
+      return appJar;
+    }
+
+    File tmpDir = Files.createTempDirectory("artifact-cache").toFile();
+    try {
+      Location location = AppJarHelper.createDeploymentJar(new LocalLocationFactory(tmpDir), applicationClz);
+      byte[] contents;
+      try (InputStream is = location.getInputStream()) {
+        contents = ByteStreams.toByteArray(is);
+      }
+      appJar = new AppJar(contents);
+    } finally {
+      deleteRecursively(tmpDir);
+    }
+    LOG.info("Built jar for application {} with {} bytes, version {}.",
+             applicationClz.getName(), appJar.contents.length, appJar.getVersion());
+    JARS.put(applicationClz, appJar);
+    return appJar;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    if (!file.delete()) {
+      LOG.warn("Failed to delete temporary file {}.", file);
+    }
+  }
+
+  /**
+   * An application jar held in memory, along with the hash of its contents.
+   */
+  private static final class AppJar {
+    private final byte[] contents;
+    private final String hash;
+
+    private AppJar(byte[] contents) {
+      this.contents = contents;
+      this.hash = Hashing.sha256().hashBytes(contents).toString();
+    }
+
+    private String getVersion() {
+      // a prefix of the hash is enough to tell the jars of the same application apart
+      return VERSION_PREFIX + hash.substring(0, 16);
+    }
+
+    private InputStream getInput() {
+      return new ByteArrayInputStream(contents);
+    }
+  }
+}
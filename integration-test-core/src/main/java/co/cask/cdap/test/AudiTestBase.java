@@ -16,6 +16,7 @@
 
 package co.cask.cdap.test;
 
+import co.cask.cdap.api.Config;
 import co.cask.cdap.api.app.Application;
 import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.api.dataset.DatasetAdmin;
@@ -23,15 +24,20 @@ import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.client.ApplicationClient;
+import co.cask.cdap.client.ArtifactClient;
 import co.cask.cdap.client.DatasetClient;
 import co.cask.cdap.client.ProgramClient;
 import co.cask.cdap.client.config.ClientConfig;
+import co.cask.cdap.client.exception.DisconnectedException;
 import co.cask.cdap.client.util.RESTClient;
+import co.cask.cdap.common.UnauthenticatedException;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.proto.DatasetInstanceConfiguration;
 import co.cask.cdap.proto.MetricQueryResult;
 import co.cask.cdap.proto.ProgramRunStatus;
 import co.cask.cdap.proto.RunRecord;
+import co.cask.cdap.proto.id.ApplicationId;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.ProgramId;
@@ -42,10 +48,13 @@ import co.cask.cdap.remote.dataset.kvtable.KVTableDatasetApp;
 import co.cask.cdap.remote.dataset.kvtable.RemoteKeyValueTable;
 import co.cask.cdap.remote.dataset.table.RemoteTable;
 import co.cask.cdap.remote.dataset.table.TableDatasetApp;
+import co.cask.cdap.security.authentication.client.AccessToken;
+import co.cask.cdap.security.spi.authorization.UnauthorizedException;
 import co.cask.chaosmonkey.proto.ClusterDisruptor;
 import com.google.common.base.Preconditions;
 import com.google.common.io.CharStreams;
 import io.cdap.common.ContentProvider;
+import io.cdap.common.http.HttpMethod;
 import io.cdap.common.http.HttpRequest;
 import io.cdap.common.http.HttpResponse;
 import org.junit.After;
@@ -63,6 +72,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * Custom wrapper around IntegrationTestBase
@@ -81,6 +92,9 @@ public class AudiTestBase extends IntegrationTestBase {
 
   // avoid logging of HttpRequest's body by default, to avoid verbose logging
   private static final int logBodyLimit = Integer.valueOf(System.getProperty("logRequestBodyLimit", "0"));
+  // requests that deploy applications or artifacts, and requests that start programs
+  private static final Pattern DEPLOY_REQUEST_PATH = Pattern.compile(".*/(apps|artifacts)(/[^/]+)?/?$");
+  private static final Pattern START_REQUEST_PATH = Pattern.compile(".*/start/?$");
   private final RESTClient restClient;
   protected DisruptorFactory disruptor;
 
@@ -92,7 +106,7 @@ public class AudiTestBase extends IntegrationTestBase {
   }
 
   public AudiTestBase() {
-    restClient = new RESTClient(getClientConfig());
+    restClient = new PhaseTimingRESTClient(getClientConfig());
     restClient.addListener(createRestClientListener());
 
     disruptor = new DisruptorFactory();
@@ -104,6 +118,16 @@ public class AudiTestBase extends IntegrationTestBase {
     return restClient;
   }
 
+  /**
+   * Starts timing the given phase of the test, until the returned scope is closed. The time spent in each phase
+   * is reported per test method when the tests are run with the {@code AutoSuiteRunner}.
+   * Deploy and program start requests are timed automatically, as well as the waiting and verification done
+   * by the helper methods of this class.
+   */
+  protected TestPhaseTimer.Scope startPhase(TestPhaseTimer.Phase phase) {
+    return TestPhaseTimer.start(phase);
+  }
+
   // constructs a RestClient.Listener with logging upon each request
   protected RESTClient.Listener createRestClientListener() {
     return new RESTClient.Listener() {
@@ -140,6 +164,55 @@ public class AudiTestBase extends IntegrationTestBase {
     };
   }
 
+  /**
+   * A {@link RESTClient} that times deploy and program start requests. The phase of a request is closed once the
+   * request is done, whether it got a response or failed, so that it does not remain open in the calling thread.
+   */
+  private static final class PhaseTimingRESTClient extends RESTClient {
+
+    PhaseTimingRESTClient(ClientConfig clientConfig) {
+      super(clientConfig);
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request, int... allowedErrorCodes)
+      throws IOException, UnauthenticatedException, DisconnectedException, UnauthorizedException {
+      try (TestPhaseTimer.Scope ignored = startRequestPhase(request)) {
+        return super.execute(request, allowedErrorCodes);
+      }
+    }
+
+    @Override
+    public HttpResponse upload(HttpRequest request, AccessToken accessToken, int... allowedErrorCodes)
+      throws IOException, UnauthenticatedException, DisconnectedException {
+      try (TestPhaseTimer.Scope ignored = startRequestPhase(request)) {
+        return super.upload(request, accessToken, allowedErrorCodes);
+      }
+    }
+  }
+
+  @Nullable
+  private static TestPhaseTimer.Scope startRequestPhase(HttpRequest httpRequest) {
+    TestPhaseTimer.Phase phase = getRequestPhase(httpRequest);
+    return phase == null ? null : TestPhaseTimer.start(phase);
+  }
+
+  @Nullable
+  private static TestPhaseTimer.Phase getRequestPhase(HttpRequest httpRequest) {
+    HttpMethod method = httpRequest.getMethod();
+    if (method != HttpMethod.POST && method != HttpMethod.PUT) {
+      return null;
+    }
+    String path = httpRequest.getURL().getPath();
+    if (DEPLOY_REQUEST_PATH.matcher(path).matches()) {
+      return TestPhaseTimer.Phase.DEPLOY;
+    }
+    if (START_REQUEST_PATH.matcher(path).matches()) {
+      return TestPhaseTimer.Phase.PROGRAM_START;
+    }
+    return null;
+  }
+
   protected ClusterDisruptor getClusterDisruptor() throws Exception {
     if (disruptor.getClusterDisruptor() == null) {
       disruptor.disruptorStart();
@@ -149,14 +222,18 @@ public class AudiTestBase extends IntegrationTestBase {
 
   protected void checkMetricAtLeast(final Map<String, String> tags, final String metric,
                                     long expectedCount, int timeOutSeconds) throws Exception {
-    Tasks.waitFor(true, () -> getMetricValue(tags, metric) >= expectedCount,
-                  timeOutSeconds, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+    try (TestPhaseTimer.Scope ignored = startPhase(TestPhaseTimer.Phase.WAIT)) {
+      Tasks.waitFor(true, () -> getMetricValue(tags, metric) >= expectedCount,
+                    timeOutSeconds, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+    }
   }
 
   protected void checkMetric(final Map<String, String> tags, final String metric,
                              long expectedCount, int timeOutSeconds) throws Exception {
-    Tasks.waitFor(expectedCount, () -> getMetricValue(tags, metric),
-                  timeOutSeconds, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+    try (TestPhaseTimer.Scope ignored = startPhase(TestPhaseTimer.Phase.WAIT)) {
+      Tasks.waitFor(expectedCount, () -> getMetricValue(tags, metric),
+                    timeOutSeconds, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+    }
   }
 
   protected long getMetricValue(Map<String, String> tags, String metric) throws Exception {
@@ -176,32 +253,89 @@ public class AudiTestBase extends IntegrationTestBase {
     throws Exception {
     final List<RunRecord> runRecords = new ArrayList<>();
     // Tasks.waitFor can be removed when CDAP-3656 is fixed
-    Tasks.waitFor(expectedSize, new Callable<Integer>() {
-      @Override
-      public Integer call() throws Exception {
-        runRecords.clear();
-        runRecords.addAll(
-          programClient.getProgramRuns(program, status, startTime, endTime, Integer.MAX_VALUE));
-        return runRecords.size();
-      }
-    }, 30, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+    try (TestPhaseTimer.Scope ignored = startPhase(TestPhaseTimer.Phase.WAIT)) {
+      Tasks.waitFor(expectedSize, new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          runRecords.clear();
+          runRecords.addAll(
+            programClient.getProgramRuns(program, status, startTime, endTime, Integer.MAX_VALUE));
+          return runRecords.size();
+        }
+      }, 30, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+    }
     return runRecords;
   }
 
   protected void assertRuns(int count, ProgramClient programClient,
                             ProgramRunStatus expectedStatus, ProgramId... programIds) throws Exception {
-    for (ProgramId programId : programIds) {
-      List<RunRecord> runRecords =
-        getRunRecords(count, programClient, programId, expectedStatus.name(), 0, Long.MAX_VALUE);
-      Assert.assertEquals(String.format("Number of runs for program %s is not equal to the expected", programId),
-                          count, runRecords.size());
-      for (RunRecord runRecord : runRecords) {
-        Assert.assertEquals(String.format("Run status of program %s is not equal to the expected", programId),
-                            expectedStatus, runRecord.getStatus());
+    try (TestPhaseTimer.Scope ignored = startPhase(TestPhaseTimer.Phase.VERIFICATION)) {
+      for (ProgramId programId : programIds) {
+        List<RunRecord> runRecords =
+          getRunRecords(count, programClient, programId, expectedStatus.name(), 0, Long.MAX_VALUE);
+        Assert.assertEquals(String.format("Number of runs for program %s is not equal to the expected", programId),
+                            count, runRecords.size());
+        for (RunRecord runRecord : runRecords) {
+          Assert.assertEquals(String.format("Run status of program %s is not equal to the expected", programId),
+                              expectedStatus, runRecord.getStatus());
+        }
       }
     }
   }
 
+  /**
+   * Profiles the latest run of a MapReduce with the {@link MapReduceProfiler}, and writes its profile next to the
+   * timing reports of the tests. This never fails the test, since the profile is only collected for trending.
+   *
+   * @return the profile, or {@code null} if it could not be collected
+   */
+  @Nullable
+  protected MapReduceProfiler.Profile profileMapReduce(ProgramId mapReduce) {
+    try {
+      MapReduceProfiler profiler = new MapReduceProfiler(getClientConfig(), getRestClient());
+      MapReduceProfiler.Profile profile = profiler.profileLatestRun(getClass().getSimpleName(), mapReduce);
+      profiler.write(profile);
+      return profile;
+    } catch (Exception e) {
+      LOG.warn("Failed to profile MapReduce {}.", mapReduce, e);
+      return null;
+    }
+  }
+
+  /**
+   * Deploys an application from an artifact that is named after the application class and versioned by the hash
+   * of its jar. The jar is only built once per JVM, and only uploaded if the namespace does not have it already.
+   * Unlike {@code deployApplication}, the id of the application must be given, because it is not known
+   * until the application is configured.
+   */
+  protected ApplicationManager deployCachedApplication(ApplicationId appId,
+                                                       Class<? extends Application> applicationClz,
+                                                       @Nullable Config configObject) throws Exception {
+    return deployCachedApplication(appId, applicationClz, configObject, getRestClient(), getClientConfig());
+  }
+
+  /**
+   * Deploys an application without config to the test namespace, like {@code deployApplication(Class)} does,
+   * from an artifact of the {@link ArtifactCache}. The given name must be the one the application sets for itself,
+   * or the simple name of its class if it does not set one.
+   */
+  protected ApplicationManager deployCachedApplication(String appName,
+                                                       Class<? extends Application> applicationClz) throws Exception {
+    return deployCachedApplication(TEST_NAMESPACE.app(appName), applicationClz, null);
+  }
+
+  protected ApplicationManager deployCachedApplication(ApplicationId appId,
+                                                       Class<? extends Application> applicationClz,
+                                                       @Nullable Config configObject, RESTClient restClient,
+                                                       ClientConfig clientConfig) throws Exception {
+    try (TestPhaseTimer.Scope ignored = startPhase(TestPhaseTimer.Phase.DEPLOY)) {
+      return ArtifactCache.deploy(getTestManager(clientConfig, restClient),
+                                  new ArtifactClient(clientConfig, restClient),
+                                  new ApplicationClient(clientConfig, restClient),
+                                  appId, applicationClz, configObject);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   protected final <T extends DatasetAdmin> T addDatasetInstance(NamespaceId namespace,
                                                                 String datasetTypeName, String datasetInstanceName,
@@ -227,8 +361,8 @@ public class AudiTestBase extends IntegrationTestBase {
 
   protected DataSetManager<Table> getTableDataset(NamespaceId namespace, String datasetName, RESTClient restClient,
                                                   ClientConfig clientConfig) throws Exception {
-    return wrap(new RemoteTable(deployServiceForDataset(namespace, TableDatasetApp.class,
-                                                        datasetName, getTestManager(clientConfig, restClient)),
+    return wrap(new RemoteTable(deployServiceForDataset(namespace, TableDatasetApp.class, datasetName,
+                                                        restClient, clientConfig),
                                 restClient, clientConfig));
   }
 
@@ -253,15 +387,18 @@ public class AudiTestBase extends IntegrationTestBase {
   // returns its baseURL
   private URL deployServiceForDataset(NamespaceId namespace, Class<? extends Application> applicationClz,
                                       String datasetName) throws Exception {
-    return deployServiceForDataset(namespace, applicationClz, datasetName, getTestManager());
+    return deployServiceForDataset(namespace, applicationClz, datasetName, getRestClient(), getClientConfig());
   }
 
   // ensures that the Service for the dataset is deployed and running
   // returns its baseURL
   private URL deployServiceForDataset(NamespaceId namespace, Class<? extends Application> applicationClz,
-                                      String datasetName, TestManager testManager) throws Exception {
+                                      String datasetName, RESTClient restClient,
+                                      ClientConfig clientConfig) throws Exception {
+    // the application is named after the dataset
     ApplicationManager appManager =
-      testManager.deployApplication(namespace, applicationClz, new AbstractDatasetApp.DatasetConfig(datasetName));
+      deployCachedApplication(namespace.app(datasetName), applicationClz,
+                              new AbstractDatasetApp.DatasetConfig(datasetName), restClient, clientConfig);
     ServiceManager serviceManager =
       appManager.getServiceManager(AbstractDatasetApp.DatasetService.class.getSimpleName());
 
@@ -269,8 +406,10 @@ public class AudiTestBase extends IntegrationTestBase {
     if (!serviceManager.isRunning()) {
       serviceManager.start();
     }
-    serviceManager.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-    return serviceManager.getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    try (TestPhaseTimer.Scope ignored = startPhase(TestPhaseTimer.Phase.WAIT)) {
+      serviceManager.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      return serviceManager.getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
   }
 
   // wraps a Dataset within a DatasetManager
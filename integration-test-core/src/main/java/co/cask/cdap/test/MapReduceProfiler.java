@@ -0,0 +1,380 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import co.cask.cdap.client.MetricsClient;
+import co.cask.cdap.client.ProgramClient;
+import co.cask.cdap.client.config.ClientConfig;
+import co.cask.cdap.client.util.RESTClient;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.proto.MRJobInfo;
+import co.cask.cdap.proto.MRTaskInfo;
+import co.cask.cdap.proto.MetricQueryResult;
+import co.cask.cdap.proto.ProgramRunStatus;
+import co.cask.cdap.proto.RunRecord;
+import co.cask.cdap.proto.id.ProgramId;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import io.cdap.common.http.HttpRequest;
+import io.cdap.common.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Collects the profile of a MapReduce run after it is done: its run record, the counters of the job and of each
+ * task, and the duration of the phases of the run that are derived from them. Each profile is written as JSON to
+ * {@code mapreduce-profiles} in the directory given by {@code test.timing.dir}, and summarized in a line of
+ * {@code mapreduce-profiles.csv} in the same directory, so that the runs of the tests can be trended.
+ *
+ * The counters and task timings are read from the run info of the MapReduce. If CDAP does not have it, only the
+ * record counters that CDAP reports as metrics are collected, and phases are derived from the run record alone.
+ */
+public final class MapReduceProfiler {
+  private static final Logger LOG = LoggerFactory.getLogger(MapReduceProfiler.class);
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  private static final String PROFILES_DIR = "mapreduce-profiles";
+  private static final String SUMMARY_FILE = "mapreduce-profiles.csv";
+
+  // counters of the job that are written to the summary of all profiles
+  private static final List<String> SUMMARY_COUNTERS = ImmutableList.of(
+    "MAP_INPUT_RECORDS", "MAP_OUTPUT_RECORDS", "MAP_OUTPUT_BYTES", "REDUCE_INPUT_RECORDS", "REDUCE_OUTPUT_RECORDS",
+    "SPILLED_RECORDS", "REDUCE_SHUFFLE_BYTES", "GC_TIME_MILLIS", "CPU_MILLISECONDS");
+  private static final List<String> SUMMARY_PHASES = ImmutableList.of("starting", "map", "reduce", "finishing");
+
+  // metrics that CDAP emits for the tasks of a MapReduce, by task type, and the counters they stand for
+  private static final Map<String, Map<String, String>> TASK_METRICS = ImmutableMap.of(
+    "m", ImmutableMap.of("system.process.entries.in", "MAP_INPUT_RECORDS",
+                         "system.process.entries.out", "MAP_OUTPUT_RECORDS",
+                         "system.process.bytes", "MAP_OUTPUT_BYTES"),
+    "r", ImmutableMap.of("system.process.entries.in", "REDUCE_INPUT_RECORDS",
+                         "system.process.entries.out", "REDUCE_OUTPUT_RECORDS"));
+
+  private final ClientConfig clientConfig;
+  private final RESTClient restClient;
+  private final ProgramClient programClient;
+  private final MetricsClient metricsClient;
+
+  public MapReduceProfiler(ClientConfig clientConfig, RESTClient restClient) {
+    this.clientConfig = clientConfig;
+    this.restClient = restClient;
+    this.programClient = new ProgramClient(clientConfig, restClient);
+    this.metricsClient = new MetricsClient(clientConfig, restClient);
+  }
+
+  /**
+   * Collects the profile of the latest run of a MapReduce.
+   *
+   * @param test the name of the test that ran the MapReduce
+   * @throws IllegalStateException if the MapReduce has no run
+   */
+  public Profile profileLatestRun(String test, ProgramId mapReduce) throws Exception {
+    List<RunRecord> runs = programClient.getProgramRuns(mapReduce, ProgramRunStatus.ALL.name(), 0, Long.MAX_VALUE, 1);
+    if (runs.isEmpty()) {
+      throw new IllegalStateException(String.format("MapReduce %s has no run to profile", mapReduce));
+    }
+    return profile(test, mapReduce, runs.get(0));
+  }
+
+  /**
+   * Collects the profile of a run of a MapReduce.
+   *
+   * @param test the name of the test that ran the MapReduce
+   */
+  public Profile profile(String test, ProgramId mapReduce, RunRecord run) throws Exception {
+    MRJobInfo jobInfo = getJobInfo(mapReduce, run.getPid());
+    Map<String, Long> counters = jobInfo == null || jobInfo.getCounters() == null
+      ? getMetricCounters(mapReduce, run.getPid()) : new HashMap<>(jobInfo.getCounters());
+
+    List<MRTaskInfo> mapTasks = jobInfo == null ? null : jobInfo.getMapTasks();
+    List<MRTaskInfo> reduceTasks = jobInfo == null ? null : jobInfo.getReduceTasks();
+    return new Profile(test, mapReduce, run, getPhases(run, jobInfo, mapTasks, reduceTasks), counters,
+                       getTaskStats(mapTasks, "MAP_INPUT_RECORDS"), getTaskStats(reduceTasks, "REDUCE_INPUT_RECORDS"));
+  }
+
+  /**
+   * Writes a profile to its own JSON file, and adds it to the summary of all profiles.
+   */
+  public void write(Profile profile) throws IOException {
+    File dir = TestPhaseTimer.getReportDir();
+    File profilesDir = new File(dir, PROFILES_DIR);
+    if (!profilesDir.isDirectory() && !profilesDir.mkdirs()) {
+      throw new IOException("Failed to create directory " + profilesDir);
+    }
+    File profileFile = new File(profilesDir, String.format("%s.%s.%s.json", profile.program.replace(':', '.'),
+                                                           profile.run, profile.test));
+    try (Writer writer = new FileWriter(profileFile)) {
+      GSON.toJson(profile, writer);
+    }
+
+    List<Object> row = new ArrayList<>();
+    row.add(profile.test);
+    row.add(profile.program);
+    row.add(profile.run);
+    row.add(profile.status);
+    row.add(getOrDefault(profile.phases, "total"));
+    for (String phase : SUMMARY_PHASES) {
+      row.add(getOrDefault(profile.phases, phase));
+    }
+    row.add(profile.mapTasks == null ? -1 : profile.mapTasks.count);
+    row.add(profile.reduceTasks == null ? -1 : profile.reduceTasks.count);
+    for (String counter : SUMMARY_COUNTERS) {
+      row.add(getOrDefault(profile.counters, counter));
+    }
+
+    // tests that run concurrently add to the same summary
+    synchronized (MapReduceProfiler.class) {
+      File summaryFile = new File(dir, SUMMARY_FILE);
+      boolean header = !summaryFile.exists();
+      try (Writer writer = new FileWriter(summaryFile, true)) {
+        if (header) {
+          List<String> columns = new ArrayList<>(ImmutableList.of("test", "program", "run", "status", "total_ms"));
+          for (String phase : SUMMARY_PHASES) {
+            columns.add(phase + "_ms");
+          }
+          columns.add("map_tasks");
+          columns.add("reduce_tasks");
+          columns.addAll(SUMMARY_COUNTERS);
+          writer.write(Joiner.on(',').join(columns) + "\n");
+        }
+        writer.write(Joiner.on(',').join(row) + "\n");
+      }
+    }
+    LOG.info("Profile of run {} of {}: phases {} ms, counters {}. Written to {}",
+             profile.run, profile.program, profile.phases, profile.counters, profileFile);
+  }
+
+  // returns null if CDAP has no run info for the MapReduce
+  @Nullable
+  private MRJobInfo getJobInfo(ProgramId mapReduce, String runId) throws Exception {
+    URL url = clientConfig.resolveNamespacedURLV3(mapReduce.getNamespaceId(), String.format(
+      "apps/%s/mapreduce/%s/runs/%s/info", mapReduce.getApplication(), mapReduce.getProgram(), runId));
+    HttpResponse response = restClient.execute(HttpRequest.get(url).build(), clientConfig.getAccessToken(),
+                                               HttpURLConnection.HTTP_NOT_FOUND);
+    if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+      LOG.debug("No run info for run {} of MapReduce {}, collecting its metrics instead.", runId, mapReduce);
+      return null;
+    }
+    return GSON.fromJson(response.getResponseBodyAsString(), MRJobInfo.class);
+  }
+
+  private Map<String, Long> getMetricCounters(ProgramId mapReduce, String runId) throws Exception {
+    Map<String, Long> counters = new HashMap<>();
+    for (Map.Entry<String, Map<String, String>> taskType : TASK_METRICS.entrySet()) {
+      Map<String, String> tags = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, mapReduce.getNamespace(),
+                                                 Constants.Metrics.Tag.APP, mapReduce.getApplication(),
+                                                 Constants.Metrics.Tag.MAPREDUCE, mapReduce.getProgram(),
+                                                 Constants.Metrics.Tag.RUN_ID, runId,
+                                                 Constants.Metrics.Tag.MR_TASK_TYPE, taskType.getKey());
+      for (Map.Entry<String, String> metric : taskType.getValue().entrySet()) {
+        MetricQueryResult result = metricsClient.query(tags, metric.getKey());
+        long value = 0;
+        for (MetricQueryResult.TimeSeries series : result.getSeries()) {
+          for (MetricQueryResult.TimeValue timeValue : series.getData()) {
+            value += timeValue.getValue();
+          }
+        }
+        counters.put(metric.getValue(), value);
+      }
+    }
+    return counters;
+  }
+
+  /**
+   * Derives the duration in milliseconds of the phases of a run. Run records have a precision of seconds, so the
+   * phases that start or end with the run are approximate:
+   * <ul>
+   *   <li>starting: from the start of the run to the start of the first task, or until the run is running if the
+   *   tasks are not known</li>
+   *   <li>map and reduce: from the start of the first task to the end of the last task of that type</li>
+   *   <li>overlap: how long the reducers were shuffling while mappers were still running</li>
+   *   <li>finishing: from the end of the last task to the end of the run, which includes the commit of outputs</li>
+   * </ul>
+   */
+  private static Map<String, Long> getPhases(RunRecord run, @Nullable MRJobInfo jobInfo,
+                                             @Nullable List<MRTaskInfo> mapTasks,
+                                             @Nullable List<MRTaskInfo> reduceTasks) {
+    Map<String, Long> phases = new LinkedHashMap<>();
+    long runStart = run.getStartTs() * 1000;
+    Long runStop = run.getStopTs() == null ? null : run.getStopTs() * 1000;
+    if (runStop != null) {
+      phases.put("total", runStop - runStart);
+    }
+
+    long[] mapSpan = getSpan(mapTasks);
+    long[] reduceSpan = getSpan(reduceTasks);
+    if (mapSpan == null) {
+      if (run.getRunTs() != null) {
+        phases.put("starting", run.getRunTs() * 1000 - runStart);
+        if (runStop != null) {
+          phases.put("running", runStop - run.getRunTs() * 1000);
+        }
+      }
+      return phases;
+    }
+
+    phases.put("starting", Math.max(mapSpan[0] - runStart, 0));
+    phases.put("map", mapSpan[1] - mapSpan[0]);
+    long lastTaskEnd = mapSpan[1];
+    if (reduceSpan != null) {
+      phases.put("reduce", reduceSpan[1] - reduceSpan[0]);
+      phases.put("overlap", Math.max(mapSpan[1] - reduceSpan[0], 0));
+      lastTaskEnd = Math.max(lastTaskEnd, reduceSpan[1]);
+    }
+    Long jobStop = jobInfo == null ? null : jobInfo.getStopTime();
+    Long end = runStop != null ? runStop : jobStop;
+    if (end != null) {
+      phases.put("finishing", Math.max(end - lastTaskEnd, 0));
+    }
+    return phases;
+  }
+
+  // returns the start of the first task and the end of the last task, or null if no task has both
+  @Nullable
+  private static long[] getSpan(@Nullable List<MRTaskInfo> tasks) {
+    if (tasks == null) {
+      return null;
+    }
+    long[] span = null;
+    for (MRTaskInfo task : tasks) {
+      if (task.getStartTime() == null || task.getFinishTime() == null) {
+        continue;
+      }
+      if (span == null) {
+        span = new long[] { task.getStartTime(), task.getFinishTime() };
+      } else {
+        span[0] = Math.min(span[0], task.getStartTime());
+        span[1] = Math.max(span[1], task.getFinishTime());
+      }
+    }
+    return span;
+  }
+
+  @Nullable
+  private static TaskStats getTaskStats(@Nullable List<MRTaskInfo> tasks, String inputCounter) {
+    if (tasks == null) {
+      return null;
+    }
+    List<Long> durations = new ArrayList<>();
+    List<Long> inputRecords = new ArrayList<>();
+    for (MRTaskInfo task : tasks) {
+      if (task.getStartTime() != null && task.getFinishTime() != null) {
+        durations.add(task.getFinishTime() - task.getStartTime());
+      }
+      Long records = task.getCounters() == null ? null : task.getCounters().get(inputCounter);
+      if (records != null) {
+        inputRecords.add(records);
+      }
+    }
+    Collections.sort(durations);
+    Collections.sort(inputRecords);
+    return new TaskStats(tasks.size(), durations, inputRecords);
+  }
+
+  private static long getOrDefault(@Nullable Map<String, Long> values, String key) {
+    Long value = values == null ? null : values.get(key);
+    return value == null ? -1L : value;
+  }
+
+  /**
+   * The profile of a MapReduce run.
+   */
+  public static final class Profile {
+    private final String test;
+    private final String program;
+    private final String run;
+    private final ProgramRunStatus status;
+    private final long startTime;
+    @Nullable
+    private final Long stopTime;
+    private final Map<String, Long> phases;
+    private final Map<String, Long> counters;
+    @Nullable
+    private final TaskStats mapTasks;
+    @Nullable
+    private final TaskStats reduceTasks;
+
+    private Profile(String test, ProgramId mapReduce, RunRecord run, Map<String, Long> phases,
+                    Map<String, Long> counters, @Nullable TaskStats mapTasks, @Nullable TaskStats reduceTasks) {
+      this.test = test;
+      this.program = mapReduce.getNamespace() + ":" + mapReduce.getApplication() + ":" + mapReduce.getProgram();
+      this.run = run.getPid();
+      this.status = run.getStatus();
+      this.startTime = run.getStartTs();
+      this.stopTime = run.getStopTs();
+      this.phases = phases;
+      this.counters = counters;
+      this.mapTasks = mapTasks;
+      this.reduceTasks = reduceTasks;
+    }
+
+    /**
+     * @return the duration in milliseconds of each phase of the run that could be derived
+     */
+    public Map<String, Long> getPhases() {
+      return phases;
+    }
+
+    /**
+     * @return the counters of the job, by counter name, such as {@code MAP_INPUT_RECORDS}
+     */
+    public Map<String, Long> getCounters() {
+      return counters;
+    }
+  }
+
+  /**
+   * Statistics of the tasks of one type, to spot stragglers and skewed inputs.
+   */
+  private static final class TaskStats {
+    private final int count;
+    private final long minMillis;
+    private final long medianMillis;
+    private final long maxMillis;
+    private final long medianInputRecords;
+    private final long maxInputRecords;
+
+    private TaskStats(int count, List<Long> sortedDurations, List<Long> sortedInputRecords) {
+      this.count = count;
+      this.minMillis = sortedDurations.isEmpty() ? -1 : sortedDurations.get(0);
+      this.medianMillis = median(sortedDurations);
+      this.maxMillis = sortedDurations.isEmpty() ? -1 : sortedDurations.get(sortedDurations.size() - 1);
+      this.medianInputRecords = median(sortedInputRecords);
+      this.maxInputRecords = sortedInputRecords.isEmpty() ? -1 : sortedInputRecords.get(sortedInputRecords.size() - 1);
+    }
+
+    private static long median(List<Long> sorted) {
+      return sorted.isEmpty() ? -1 : sorted.get(sorted.size() / 2);
+    }
+  }
+}
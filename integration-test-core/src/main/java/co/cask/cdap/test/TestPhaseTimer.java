@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how much time the running test spends in each {@link Phase}. Phases can be nested, in which case
+ * the time is only attributed to the innermost phase. Time spent outside of any phase is not recorded.
+ * Durations are recorded per thread, so that tests running concurrently in different threads are timed separately.
+ */
+public final class TestPhaseTimer {
+
+  /**
+   * Phases of an integration test.
+   */
+  public enum Phase {
+    DEPLOY,
+    PROGRAM_START,
+    WAIT,
+    VERIFICATION
+  }
+
+  // system property of the directory to write the timing reports of the tests to, and its default
+  private static final String REPORT_DIR_PROPERTY = "test.timing.dir";
+  private static final String DEFAULT_REPORT_DIR = "target";
+
+  private static final ThreadLocal<Map<Phase, Long>> DURATIONS = new ThreadLocal<Map<Phase, Long>>() {
+    @Override
+    protected Map<Phase, Long> initialValue() {
+      return new EnumMap<>(Phase.class);
+    }
+  };
+  private static final ThreadLocal<Deque<Scope>> SCOPES = new ThreadLocal<Deque<Scope>>() {
+    @Override
+    protected Deque<Scope> initialValue() {
+      return new ArrayDeque<>();
+    }
+  };
+
+  private TestPhaseTimer() { }
+
+  /**
+   * Returns the directory to write the timing reports and profiles of the tests to. It is given by the
+   * {@code test.timing.dir} system property, and is {@code target} by default.
+   */
+  public static File getReportDir() {
+    return new File(System.getProperty(REPORT_DIR_PROPERTY, DEFAULT_REPORT_DIR));
+  }
+
+  /**
+   * Starts timing the given phase in the current thread, until the returned {@link Scope} is closed.
+   */
+  public static Scope start(Phase phase) {
+    Scope scope = new Scope(phase);
+    SCOPES.get().push(scope);
+    return scope;
+  }
+
+  /**
+   * Clears the durations recorded in the current thread. Called before each test.
+   */
+  public static void reset() {
+    DURATIONS.get().clear();
+  }
+
+  /**
+   * Returns the time in milliseconds spent in each phase in the current thread since the last {@link #reset()}.
+   */
+  public static Map<Phase, Long> getDurations() {
+    Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+    for (Map.Entry<Phase, Long> entry : DURATIONS.get().entrySet()) {
+      durations.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+    }
+    return durations;
+  }
+
+  private static void add(Phase phase, long nanos) {
+    Map<Phase, Long> durations = DURATIONS.get();
+    Long current = durations.get(phase);
+    durations.put(phase, current == null ? nanos : current + nanos);
+  }
+
+  /**
+   * The time period of one phase. Closing it stops the timing of the phase.
+   */
+  public static final class Scope implements AutoCloseable {
+    private final Phase phase;
+    private final long startNanos;
+    private long childNanos;
+    private boolean closed;
+
+    private Scope(Phase phase) {
+      this.phase = phase;
+      this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      Deque<Scope> scopes = SCOPES.get();
+      // the scope is not in the stack if it is closed from a different thread than the one that started it
+      boolean inStack = scopes.contains(this);
+      if (inStack) {
+        // close inner scopes that were left open, e.g. because a request failed without a response
+        while (scopes.peek() != this) {
+          scopes.peek().close();
+        }
+        scopes.pop();
+      }
+      closed = true;
+
+      long elapsed = System.nanoTime() - startNanos;
+      add(phase, elapsed - childNanos);
+      Scope parent = inStack ? scopes.peek() : null;
+      if (parent != null) {
+        parent.childNanos += elapsed;
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link SyntheticRecordGenerator}.
+ */
+public class SyntheticRecordGeneratorTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("active", Schema.of(Schema.Type.BOOLEAN)),
+    Schema.Field.of("count", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("score", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("comment", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+  private static final int RECORDS = 1000;
+
+  @Test
+  public void testSameSeedSameRecords() {
+    for (RecordFormat format : RecordFormat.values()) {
+      for (KeyDistribution distribution : KeyDistribution.values()) {
+        SyntheticRecordGenerator first = new SyntheticRecordGenerator(SCHEMA, "id", format, 120, distribution,
+                                                                      1000, 1d, 42L);
+        SyntheticRecordGenerator second = new SyntheticRecordGenerator(SCHEMA, "id", format, 120, distribution,
+                                                                       1000, 1d, 42L);
+        SyntheticRecordGenerator other = new SyntheticRecordGenerator(SCHEMA, "id", format, 120, distribution,
+                                                                      1000, 1d, 43L);
+        int differences = 0;
+        for (int i = 0; i < RECORDS; i++) {
+          first.next();
+          second.next();
+          other.next();
+          Assert.assertEquals(first.getKey(), second.getKey());
+          Assert.assertArrayEquals(getRecord(first), getRecord(second));
+          if (!Arrays.equals(getRecord(first), getRecord(other))) {
+            differences++;
+          }
+        }
+        Assert.assertEquals(RECORDS, differences);
+      }
+    }
+  }
+
+  @Test
+  public void testRecordSize() {
+    for (RecordFormat format : RecordFormat.values()) {
+      for (int recordSize : new int[] { 100, 200, 1000 }) {
+        SyntheticRecordGenerator generator = new SyntheticRecordGenerator(SCHEMA, "id", format, recordSize,
+                                                                          KeyDistribution.UNIFORM, 1000000, 1d, 0L);
+        for (int i = 0; i < RECORDS; i++) {
+          generator.next();
+          Assert.assertEquals(format + " record " + getText(generator), recordSize, generator.getLength());
+        }
+      }
+    }
+
+    // without strings to pad, or with a record size that is too small, the records are as short as they can be
+    Schema noStrings = Schema.recordOf("record", Schema.Field.of("key", Schema.of(Schema.Type.INT)));
+    SyntheticRecordGenerator generator = new SyntheticRecordGenerator(noStrings, null, RecordFormat.CSV, 100,
+                                                                      KeyDistribution.UNIFORM, 10, 1d, 0L);
+    generator.next();
+    Assert.assertEquals(String.valueOf(generator.getKey()), getText(generator));
+  }
+
+  @Test
+  public void testCsvRecords() {
+    SyntheticRecordGenerator generator = new SyntheticRecordGenerator(SCHEMA, "id", RecordFormat.CSV, 120,
+                                                                      KeyDistribution.UNIFORM, 1000, 1d, 0L);
+    for (int i = 0; i < RECORDS; i++) {
+      generator.next();
+      String[] values = getText(generator).split(",", -1);
+      Assert.assertEquals(6, values.length);
+      Assert.assertEquals(generator.getKey(), Long.parseLong(values[0]));
+      Assert.assertTrue(values[1], "true".equals(values[1]) || "false".equals(values[1]));
+      Assert.assertTrue(Integer.parseInt(values[2]) >= 0);
+      Assert.assertTrue(Double.parseDouble(values[3]) >= 0d);
+      Assert.assertFalse(values[4].isEmpty());
+      Assert.assertFalse(values[5].isEmpty());
+    }
+  }
+
+  @Test
+  public void testJsonRecords() {
+    // a string key field holds the digits of the key
+    SyntheticRecordGenerator generator = new SyntheticRecordGenerator(SCHEMA, "name", RecordFormat.JSON, 200,
+                                                                      KeyDistribution.ZIPF, 1000, 1d, 0L);
+    for (int i = 0; i < RECORDS; i++) {
+      generator.next();
+      JsonObject record = new JsonParser().parse(getText(generator)).getAsJsonObject();
+      Assert.assertEquals(6, record.size());
+      Assert.assertEquals(String.valueOf(generator.getKey()), record.get("name").getAsString());
+      Assert.assertTrue(record.get("id").getAsLong() >= 0L);
+      record.get("active").getAsBoolean();
+      Assert.assertTrue(record.get("count").getAsInt() >= 0);
+      Assert.assertTrue(record.get("score").getAsDouble() >= 0d);
+      Assert.assertFalse(record.get("comment").getAsString().isEmpty());
+    }
+  }
+
+  @Test
+  public void testKeyDistribution() {
+    int samples = 100000;
+    SyntheticRecordGenerator uniform = new SyntheticRecordGenerator(SCHEMA, "id", RecordFormat.CSV, 0,
+                                                                    KeyDistribution.UNIFORM, 1000, 1d, 0L);
+    SyntheticRecordGenerator zipf = new SyntheticRecordGenerator(SCHEMA, "id", RecordFormat.CSV, 0,
+                                                                 KeyDistribution.ZIPF, 1000, 1d, 0L);
+    int uniformFirstKeys = 0;
+    int zipfFirstKeys = 0;
+    for (int i = 0; i < samples; i++) {
+      uniform.next();
+      zipf.next();
+      Assert.assertTrue(uniform.getKey() >= 0 && uniform.getKey() < 1000);
+      Assert.assertTrue(zipf.getKey() >= 0 && zipf.getKey() < 1000);
+      uniformFirstKeys += uniform.getKey() == 0 ? 1 : 0;
+      zipfFirstKeys += zipf.getKey() == 0 ? 1 : 0;
+    }
+    // with an exponent of 1, key 0 has a probability of 1 / H(1000), the 1000th harmonic number
+    Assert.assertEquals(0.1336, (double) zipfFirstKeys / samples, 0.005);
+    Assert.assertEquals(0.001, (double) uniformFirstKeys / samples, 0.0005);
+  }
+
+  private static byte[] getRecord(SyntheticRecordGenerator generator) {
+    return Arrays.copyOf(generator.getBytes(), generator.getLength());
+  }
+
+  private static String getText(SyntheticRecordGenerator generator) {
+    return new String(generator.getBytes(), 0, generator.getLength(), StandardCharsets.UTF_8);
+  }
+}
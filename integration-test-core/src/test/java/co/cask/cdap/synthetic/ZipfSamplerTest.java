@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.synthetic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+/**
+ * Tests for {@link ZipfSampler}.
+ */
+public class ZipfSamplerTest {
+
+  private static final int SAMPLES = 200000;
+
+  @Test
+  public void testFrequencies() {
+    for (double exponent : new double[] { 0.5, 1d, 2d }) {
+      int elements = 100;
+      long[] counts = new long[elements + 1];
+      ZipfSampler sampler = new ZipfSampler(elements, exponent);
+      SplittableRandom random = new SplittableRandom(0L);
+      for (int i = 0; i < SAMPLES; i++) {
+        long rank = sampler.sample(random);
+        Assert.assertTrue("Rank out of range: " + rank, rank >= 1 && rank <= elements);
+        counts[(int) rank]++;
+      }
+
+      double normalization = 0d;
+      for (int k = 1; k <= elements; k++) {
+        normalization += Math.pow(k, -exponent);
+      }
+      for (int k = 1; k <= 5; k++) {
+        double expected = Math.pow(k, -exponent) / normalization;
+        // within five standard deviations
+        double tolerance = 5 * Math.sqrt(expected * (1 - expected) / SAMPLES);
+        Assert.assertEquals("Frequency of rank " + k + " with exponent " + exponent,
+                            expected, (double) counts[k] / SAMPLES, tolerance);
+      }
+    }
+  }
+
+  @Test
+  public void testSameSeedSameSamples() {
+    ZipfSampler sampler = new ZipfSampler(1000000000L, 1.2);
+    SplittableRandom first = new SplittableRandom(7L);
+    SplittableRandom second = new SplittableRandom(7L);
+    for (int i = 0; i < 1000; i++) {
+      long rank = sampler.sample(first);
+      Assert.assertEquals(rank, sampler.sample(second));
+      Assert.assertTrue(rank >= 1 && rank <= 1000000000L);
+    }
+  }
+
+  @Test
+  public void testSingleElement() {
+    ZipfSampler sampler = new ZipfSampler(1, 1d);
+    SplittableRandom random = new SplittableRandom(0L);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(1L, sampler.sample(random));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidExponent() {
+    new ZipfSampler(10, 0d);
+  }
+}
@@ -16,17 +16,28 @@
 
 package co.cask.cdap.test.runner;
 
+import co.cask.cdap.test.TestPhaseTimer;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.junit.experimental.categories.Categories;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.Description;
+import org.junit.runner.RunWith;
 import org.junit.runner.Runner;
+import org.junit.runner.manipulation.NoTestsRemainException;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.ParentRunner;
 import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
@@ -34,6 +45,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
@@ -42,18 +54,41 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
 /**
  * Use this test {@link Runner} to automatically discover test classes to run.
+ * Test classes are discovered from the {@link TestClassIndex} of each class path root if it has one,
+ * otherwise by scanning the classes under the given packages. Classes given to {@link Matches} that are suites
+ * run by this runner contribute their own test classes, so that a suite can extend another one.
+ * Test classes in a category excluded with {@link Categories.ExcludeCategory} on the suite class are skipped
+ * without creating a runner for them, and test methods in an excluded category are filtered out.
+ * The duration of every test class and test method is reported to the directory given by {@code test.timing.dir}.
+ * Suites annotated with {@link Parallel} run their test classes concurrently.
  */
 public class AutoSuiteRunner extends ParentRunner<Runner> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(AutoSuiteRunner.class);
+
   private final List<Runner> children;
+  private final TestTimingListener timingListener = new TestTimingListener();
   private static final String TESTS_TO_RUN = "long.test";
+  private static final String SHARD_INDEX = "shard.index";
+  private static final String SHARD_COUNT = "shard.count";
+  private static final String SHARD_HISTORY = "shard.history";
+  private static final String TIMING_TOP = "test.timing.top";
+  private static final String SUITE_THREADS = "suite.threads";
 
   /**
    * The <code>SuitePackages</code> annotation specifies the packages to discover test classes to run.
@@ -65,7 +100,13 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
     /**
      * returns the packages to inspect
      */
-    String[] packages();
+    String[] packages() default { };
+
+    /**
+     * returns the test classes to run in addition to the ones discovered from the packages. Suites annotated with
+     * {@link Matches} are replaced by the test classes they match
+     */
+    Class<?>[] classes() default { };
 
     /**
      * returns the regex for matching class name. Default match class names end with Test.
@@ -73,10 +114,24 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
     String pattern() default ".*Test$";
   }
 
+  /**
+   * The <code>Parallel</code> annotation runs the test classes of the suite concurrently, each one in a single thread.
+   * The number of threads can be overridden with the {@code suite.threads} system property, where 1 runs the test
+   * classes one after the other.
+   */
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  @Inherited
+  public @interface Parallel {
+    /**
+     * returns the number of test classes to run concurrently, or 0 to run all of them concurrently
+     */
+    int threads() default 0;
+  }
+
   public AutoSuiteRunner(Class<?> testClass, final RunnerBuilder runnerBuilder) throws Throwable {
     super(testClass);
 
-    final List<Runner> runners = new ArrayList<>();
     final ClassLoader classLoader = getClass().getClassLoader();
     Matches matches = testClass.getAnnotation(Matches.class);
     if (matches == null) {
@@ -89,6 +144,93 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
     }
     Pattern pattern = Pattern.compile(patternStr);
 
+    Class<?>[] excludedCategories = new Class<?>[0];
+    Categories.ExcludeCategory excludeCategory = testClass.getAnnotation(Categories.ExcludeCategory.class);
+    if (excludeCategory != null) {
+      excludedCategories = excludeCategory.value();
+    }
+
+    List<String> classNames = new ArrayList<>();
+    // categories of the classes found from a test class index. Other classes have to be loaded to get them.
+    Map<String, List<String>> indexedCategories = new HashMap<>();
+    addMatches(testClass, matches, pattern, classLoader, classNames, indexedCategories, new HashSet<>());
+
+    if (excludedCategories.length > 0) {
+      List<String> included = new ArrayList<>();
+      for (String className : classNames) {
+        List<String> categories = indexedCategories.get(className);
+        if (categories == null) {
+          Category category = classLoader.loadClass(className).getAnnotation(Category.class);
+          categories = new ArrayList<>();
+          for (Class<?> categoryClass : category == null ? new Class<?>[0] : category.value()) {
+            categories.add(categoryClass.getName());
+          }
+        }
+        if (!isExcluded(categories, excludedCategories, classLoader)) {
+          included.add(className);
+        }
+      }
+      classNames = included;
+    }
+
+    int shardIndex = Integer.getInteger(SHARD_INDEX, 0);
+    int shardCount = Integer.getInteger(SHARD_COUNT, 1);
+    Preconditions.checkArgument(shardCount > 0, "%s must be positive, got %s", SHARD_COUNT, shardCount);
+    Preconditions.checkArgument(shardIndex >= 0 && shardIndex < shardCount,
+                                "%s must be in the range [0, %s), got %s", SHARD_INDEX, shardCount, shardIndex);
+    if (shardCount > 1) {
+      Map<String, Long> history = TestDurationHistory.load(System.getProperty(SHARD_HISTORY));
+      classNames = TestShards.select(classNames, shardIndex, shardCount, history);
+      LOG.info("Running shard {} of {} with test classes {}", shardIndex, shardCount, classNames);
+    }
+
+    List<Runner> runners = new ArrayList<>();
+    for (String className : classNames) {
+      runners.add(runnerBuilder.runnerForClass(classLoader.loadClass(className)));
+    }
+    this.children = runners;
+
+    if (excludedCategories.length > 0) {
+      try {
+        // test methods can be in excluded categories as well
+        filter(Categories.CategoryFilter.exclude(excludedCategories));
+      } catch (NoTestsRemainException e) {
+        LOG.warn("All tests of suite {} are in the excluded categories", testClass.getName());
+      }
+    }
+
+    Parallel parallel = testClass.getAnnotation(Parallel.class);
+    if (parallel != null) {
+      int threads = Integer.getInteger(SUITE_THREADS, parallel.threads());
+      if (threads <= 0) {
+        threads = runners.size();
+      }
+      if (threads > 1 && runners.size() > 1) {
+        LOG.info("Running up to {} test classes concurrently", threads);
+        setScheduler(new ParallelScheduler(threads));
+      }
+    }
+  }
+
+  /**
+   * Adds the test classes matched by a suite, and by the suites given to its {@link Matches}.
+   */
+  private void addMatches(Class<?> suiteClass, Matches matches, Pattern pattern, ClassLoader classLoader,
+                          List<String> classNames, Map<String, List<String>> indexedCategories,
+                          Set<Class<?>> visitedSuites) throws Exception {
+    if (!visitedSuites.add(suiteClass)) {
+      return;
+    }
+    for (Class<?> cls : matches.classes()) {
+      Matches suiteMatches = cls.getAnnotation(Matches.class);
+      RunWith runWith = cls.getAnnotation(RunWith.class);
+      if (suiteMatches != null && runWith != null && AutoSuiteRunner.class.equals(runWith.value())) {
+        addMatches(cls, suiteMatches, pattern, classLoader, classNames, indexedCategories, visitedSuites);
+      } else if (pattern.matcher(cls.getName()).matches() && !classNames.contains(cls.getName())) {
+        classNames.add(cls.getName());
+      }
+    }
+
     // Find all packages as specified
     for (String pkg : matches.packages()) {
       Enumeration<URL> resources = classLoader.getResources(pkg.replace('.', '/') + "/");
@@ -96,16 +238,22 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
         URL url = resources.nextElement();
         switch (url.getProtocol()) {
           case "file":
-            addRunnerFromPath(pkg, Paths.get(url.toURI()), pattern, runnerBuilder, runners);
+            Path path = Paths.get(url.toURI());
+            Path indexPath = getPackageBase(pkg, path).resolve(TestClassIndex.RESOURCE_NAME);
+            if (Files.isRegularFile(indexPath)) {
+              try (Reader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+                addClassesFromIndex(pkg, TestClassIndex.read(reader), pattern, classNames, indexedCategories);
+              }
+            } else {
+              addClassesFromPath(pkg, path, pattern, classNames);
+            }
           break;
           case "jar":
-            addRunnerFromJar(pkg, getJarPath(url), pattern, runnerBuilder, runners);
+            addClassesFromJar(pkg, getJarPath(url), pattern, classNames, indexedCategories);
           break;
         }
       }
     }
-
-    this.children = runners;
   }
 
   private String createRegex(String testsToRun) {
@@ -120,6 +268,23 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
     return regex.toString();
   }
 
+  /**
+   * Returns true if any of the given categories is one of the excluded categories or a sub-category of it.
+   */
+  private boolean isExcluded(List<String> categories, Class<?>[] excludedCategories,
+                             ClassLoader classLoader) throws ClassNotFoundException {
+    for (String category : categories) {
+      // category classes are small marker interfaces, so loading them is cheap compared to loading the test class
+      Class<?> categoryClass = classLoader.loadClass(category);
+      for (Class<?> excludedCategory : excludedCategories) {
+        if (excludedCategory.isAssignableFrom(categoryClass)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   @Override
   protected List<Runner> getChildren() {
     return children;
@@ -130,22 +295,58 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
     return child.getDescription();
   }
 
+  @Override
+  public void run(RunNotifier notifier) {
+    notifier.addListener(timingListener);
+    try {
+      super.run(notifier);
+    } finally {
+      notifier.removeListener(timingListener);
+      reportTimings();
+    }
+  }
+
   @Override
   protected void runChild(Runner child, RunNotifier notifier) {
-    child.run(notifier);
+    long startTime = System.currentTimeMillis();
+    try {
+      child.run(notifier);
+    } finally {
+      timingListener.classFinished(child.getDescription().getClassName(), System.currentTimeMillis() - startTime);
+    }
   }
 
   /**
-   * Find test classes from the given path recursively and create test runner for them.
+   * Writes the timing reports of the tests that ran and records the test class durations in the shard history,
+   * so that later runs can balance their shards with them.
    */
-  private void addRunnerFromPath(String pkg, Path path, final Pattern pattern,
-                                 final RunnerBuilder runnerBuilder, final List<Runner> runners) throws IOException {
-    final ClassLoader classLoader = getClass().getClassLoader();
+  private void reportTimings() {
+    timingListener.logSlowest(Integer.getInteger(TIMING_TOP, 10));
+    File reportDir = TestPhaseTimer.getReportDir();
+    try {
+      timingListener.writeReports(reportDir, getTestClass().getJavaClass().getSimpleName());
+    } catch (IOException e) {
+      LOG.warn("Failed to write test timing reports to {}", reportDir, e);
+    }
 
-    // Find the file path that representing the root of where the given package path starts.
-    // E.g. pkg == "co.cask.cdap", path == "/root/co/cask/cdap", then pkgBase will be "/root"
-    final Path pkgBase = path.getRoot().resolve(
-      path.subpath(0, path.getNameCount() - CharMatcher.is('.').countIn(pkg) - 1));
+    String historyFile = System.getProperty(SHARD_HISTORY);
+    if (historyFile != null && !historyFile.isEmpty()) {
+      try {
+        Map<String, Long> history = TestDurationHistory.load(historyFile);
+        history.putAll(timingListener.getClassDurations());
+        TestDurationHistory.save(historyFile, history);
+      } catch (IOException e) {
+        LOG.warn("Failed to update test duration history {}", historyFile, e);
+      }
+    }
+  }
+
+  /**
+   * Find test classes from the given path recursively and add their names to the given list.
+   */
+  private void addClassesFromPath(String pkg, Path path, final Pattern pattern,
+                                  final List<String> classNames) throws IOException {
+    final Path pkgBase = getPackageBase(pkg, path);
 
     // Walk the package directory recursively.
     Files.walkFileTree(path, new FileVisitor<Path>() {
@@ -156,19 +357,13 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
 
       @Override
       public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        // Figure out the class name and create a runner for it
+        // Figure out the class name and collect it if it matches
         Path relative = pkgBase.relativize(file);
         String className = relative.toString().replace(File.separatorChar, '.');
         className = className.substring(0, className.length() - ".class".length());
 
-        if (!pattern.matcher(className).matches()) {
-          return FileVisitResult.CONTINUE;
-        }
-
-        try {
-          runners.add(runnerBuilder.runnerForClass(classLoader.loadClass(className)));
-        } catch (Throwable e) {
-          throw Throwables.propagate(e);
+        if (pattern.matcher(className).matches()) {
+          classNames.add(className);
         }
         return FileVisitResult.CONTINUE;
       }
@@ -186,13 +381,21 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
   }
 
   /**
-   * Find test classes from the given path recursively and create test runner for them.
+   * Find test classes from the given JAR and add their names to the given list.
+   * The test class index in the JAR is used if there is one, otherwise all entries of the JAR are scanned.
    */
-  private void addRunnerFromJar(String pkg, Path jarPath, final Pattern pattern,
-                                RunnerBuilder runnerBuilder, List<Runner> runners) throws Throwable {
-    ClassLoader classLoader = getClass().getClassLoader();
-    // Visit every entries in the JAR and look for class files that matches the given package and pattern
+  private void addClassesFromJar(String pkg, Path jarPath, Pattern pattern, List<String> classNames,
+                                 Map<String, List<String>> indexedCategories) throws IOException {
     try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+      JarEntry indexEntry = jarFile.getJarEntry(TestClassIndex.RESOURCE_NAME);
+      if (indexEntry != null) {
+        try (Reader reader = new InputStreamReader(jarFile.getInputStream(indexEntry), StandardCharsets.UTF_8)) {
+          addClassesFromIndex(pkg, TestClassIndex.read(reader), pattern, classNames, indexedCategories);
+        }
+        return;
+      }
+
+      // Visit every entries in the JAR and look for class files that matches the given package and pattern
       Enumeration<JarEntry> entries = jarFile.entries();
       String pkgPath = pkg.replace('.', '/') + '/';
       while (entries.hasMoreElements()) {
@@ -202,14 +405,39 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
         }
         String className = jarEntry.getName().replace('/', '.');
         className = className.substring(0, className.length() - ".class".length());
-        if (!pattern.matcher(className).matches()) {
-          continue;
+        if (pattern.matcher(className).matches()) {
+          classNames.add(className);
         }
-        runners.add(runnerBuilder.runnerForClass(classLoader.loadClass(className)));
       }
     }
   }
 
+  /**
+   * Find test classes of the given package or its sub-packages in the test class index and add their names
+   * to the given list, together with their categories.
+   */
+  private void addClassesFromIndex(String pkg, List<TestClassIndex.Entry> entries, Pattern pattern,
+                                   List<String> classNames, Map<String, List<String>> indexedCategories) {
+    for (TestClassIndex.Entry entry : entries) {
+      String entryPackage = entry.getPackageName();
+      if (!entryPackage.equals(pkg) && !entryPackage.startsWith(pkg + ".")) {
+        continue;
+      }
+      if (pattern.matcher(entry.getClassName()).matches()) {
+        classNames.add(entry.getClassName());
+        indexedCategories.put(entry.getClassName(), entry.getCategories());
+      }
+    }
+  }
+
+  /**
+   * Returns the file path that represents the root of where the given package path starts.
+   * E.g. pkg == "co.cask.cdap", path == "/root/co/cask/cdap", then the result will be "/root"
+   */
+  private Path getPackageBase(String pkg, Path path) {
+    return path.getRoot().resolve(path.subpath(0, path.getNameCount() - CharMatcher.is('.').countIn(pkg) - 1));
+  }
+
   /**
    * Returns the file path of the JAR represented by the given URL that points to an entry inside the JAR.
    */
@@ -219,4 +447,47 @@ public class AutoSuiteRunner extends ParentRunner<Runner> {
     String path = url.getFile();
     return Paths.get(URI.create(path.substring(0, path.indexOf("!/"))));
   }
+
+  /**
+   * A {@link RunnerScheduler} that runs the children of the suite in a fixed size thread pool.
+   */
+  private static final class ParallelScheduler implements RunnerScheduler {
+    private final int threads;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private ExecutorService executor;
+
+    private ParallelScheduler(int threads) {
+      this.threads = threads;
+    }
+
+    @Override
+    public void schedule(Runnable childStatement) {
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(
+          threads, new ThreadFactoryBuilder().setNameFormat("suite-runner-%d").build());
+      }
+      futures.add(executor.submit(childStatement));
+    }
+
+    @Override
+    public void finished() {
+      try {
+        // failures of the tests are reported to the notifier, so the futures only fail on unexpected errors
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      } finally {
+        futures.clear();
+        if (executor != null) {
+          executor.shutdownNow();
+          executor = null;
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test.runner;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index of the test classes in a class path root, generated at compile time by {@link TestClassIndexProcessor}.
+ * It allows {@link AutoSuiteRunner} to discover and filter test classes without loading them.
+ * Each line of the index has the class name, the package and the comma separated categories of a class,
+ * separated by tabs.
+ */
+public final class TestClassIndex {
+
+  /**
+   * Name of the index resource, relative to the class path root.
+   */
+  public static final String RESOURCE_NAME = "META-INF/cdap-test-index/test-classes.idx";
+
+  private static final Splitter FIELD_SPLITTER = Splitter.on('\t');
+  private static final Splitter CATEGORY_SPLITTER = Splitter.on(',').omitEmptyStrings();
+
+  private TestClassIndex() { }
+
+  /**
+   * An entry in the index, representing one top level class.
+   */
+  public static final class Entry {
+    private final String className;
+    private final String packageName;
+    private final List<String> categories;
+
+    public Entry(String className, String packageName, List<String> categories) {
+      this.className = className;
+      this.packageName = packageName;
+      this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public String getPackageName() {
+      return packageName;
+    }
+
+    /**
+     * Returns the names of the categories of the class, including the ones inherited from its super classes.
+     */
+    public List<String> getCategories() {
+      return categories;
+    }
+  }
+
+  /**
+   * Reads all entries from the given index.
+   */
+  public static List<Entry> read(Reader reader) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    BufferedReader bufferedReader = new BufferedReader(reader);
+    String line = bufferedReader.readLine();
+    while (line != null) {
+      if (!line.isEmpty()) {
+        List<String> fields = FIELD_SPLITTER.splitToList(line);
+        if (fields.size() != 3) {
+          throw new IOException("Invalid test class index line: " + line);
+        }
+        entries.add(new Entry(fields.get(0), fields.get(1), CATEGORY_SPLITTER.splitToList(fields.get(2))));
+      }
+      line = bufferedReader.readLine();
+    }
+    return entries;
+  }
+
+  /**
+   * Writes the given entries as an index.
+   */
+  public static void write(Writer writer, Collection<Entry> entries) throws IOException {
+    for (Entry entry : entries) {
+      writer.write(entry.getClassName());
+      writer.write('\t');
+      writer.write(entry.getPackageName());
+      writer.write('\t');
+      writer.write(Joiner.on(',').join(entry.getCategories()));
+      writer.write('\n');
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test.runner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that generates the {@link TestClassIndex} of the classes being compiled.
+ * It is not registered as a service, so it only runs for modules that configure it as one of the
+ * {@code annotationProcessors} of the maven compiler plugin, like the test classes of this module.
+ * Since the index only covers the classes of one compilation, it relies on the whole module being recompiled
+ * when any of its sources change, which is what the maven compiler plugin does.
+ */
+@SupportedAnnotationTypes("*")
+public class TestClassIndexProcessor extends AbstractProcessor {
+
+  private static final String CATEGORY_ANNOTATION = "org.junit.experimental.categories.Category";
+
+  private final Map<String, TestClassIndex.Entry> entries = new TreeMap<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if (roundEnv.processingOver()) {
+      if (!entries.isEmpty()) {
+        writeIndex();
+      }
+      return false;
+    }
+
+    Elements elements = processingEnv.getElementUtils();
+    for (Element element : roundEnv.getRootElements()) {
+      if (element.getKind() != ElementKind.CLASS) {
+        continue;
+      }
+      TypeElement typeElement = (TypeElement) element;
+      String className = elements.getBinaryName(typeElement).toString();
+      String packageName = elements.getPackageOf(typeElement).getQualifiedName().toString();
+      entries.put(className, new TestClassIndex.Entry(className, packageName, getCategories(typeElement)));
+    }
+    // never claim any annotation, so that other processors still see them
+    return false;
+  }
+
+  /**
+   * Returns the categories of the given class. Since {@code Category} is inherited, the closest
+   * annotation in the class hierarchy applies.
+   */
+  private List<String> getCategories(TypeElement typeElement) {
+    Elements elements = processingEnv.getElementUtils();
+    TypeElement current = typeElement;
+    while (current != null) {
+      for (AnnotationMirror mirror : current.getAnnotationMirrors()) {
+        if (!CATEGORY_ANNOTATION.equals(mirror.getAnnotationType().toString())) {
+          continue;
+        }
+        List<String> categories = new ArrayList<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+          : mirror.getElementValues().entrySet()) {
+          if (!"value".equals(entry.getKey().getSimpleName().toString())) {
+            continue;
+          }
+          for (Object value : (List<?>) entry.getValue().getValue()) {
+            TypeMirror category = (TypeMirror) ((AnnotationValue) value).getValue();
+            categories.add(elements.getBinaryName((TypeElement) ((DeclaredType) category).asElement()).toString());
+          }
+        }
+        return categories;
+      }
+      TypeMirror superClass = current.getSuperclass();
+      current = superClass.getKind() == TypeKind.DECLARED
+        ? (TypeElement) ((DeclaredType) superClass).asElement() : null;
+    }
+    return Collections.emptyList();
+  }
+
+  private void writeIndex() {
+    try {
+      FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                                                                TestClassIndex.RESOURCE_NAME);
+      try (Writer writer = file.openWriter()) {
+        TestClassIndex.write(writer, entries.values());
+      }
+    } catch (IOException e) {
+      // without the index, the AutoSuiteRunner falls back to scanning the classes
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                               "Failed to write test class index: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.test.runner;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Reads and writes the duration history of test classes. The history is a JSON object that maps
+ * the test class name to the duration of its last run in milliseconds.
+ */
+public final class TestDurationHistory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TestDurationHistory.class);
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  private static final Type HISTORY_TYPE = new TypeToken<Map<String, Long>>() { }.getType();
+
+  private TestDurationHistory() { }
+
+  /**
+   * Loads the duration history from the given file.
+   *
+   * @param historyFile path to the history file, or {@code null} if there is no history
+   * @return the durations keyed by test class name; empty if the file is not given or does not exist
+   */
+  public static Map<String, Long> load(@Nullable String historyFile) throws IOException {
+    Map<String, Long> history = new TreeMap<>();
+    if (historyFile == null || historyFile.isEmpty()) {
+      return history;
+    }
+    try (Reader reader = new FileReader(historyFile)) {
+      Map<String, Long> loaded = GSON.fromJson(reader, HISTORY_TYPE);
+      if (loaded != null) {
+        history.putAll(loaded);
+      }
+    } catch (FileNotFoundException e) {
+      LOG.warn("Test duration history file {} not found", historyFile);
+    }
+    return history;
+  }
+
+  /**
+   * Saves the duration history to the given file, replacing any existing content.
+   */
+  public static void save(String historyFile, Map<String, Long> history) throws IOException {
+    try (Writer writer = new FileWriter(historyFile)) {
+      GSON.toJson(new TreeMap<>(history), HISTORY_TYPE, writer);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.test.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Splits test classes into balanced shards, so that a suite can be spread over multiple clients and clusters.
+ * Every shard computes the same assignment independently, so the result must only depend on the inputs.
+ */
+final class TestShards {
+
+  private TestShards() { }
+
+  /**
+   * Returns the test classes that belong to the given shard.
+   * If there is duration history for any of the classes, the classes are assigned with the greedy
+   * longest-processing-time heuristic, using the average known duration for classes without history.
+   * Otherwise, classes are assigned by the hash of their name.
+   *
+   * @param classNames names of all test classes to run
+   * @param shardIndex index of the shard to select, in the range [0, shardCount)
+   * @param shardCount total number of shards
+   * @param history duration in milliseconds of previous runs, keyed by test class name
+   * @return names of the test classes in the given shard, sorted by name
+   */
+  static List<String> select(List<String> classNames, int shardIndex, int shardCount, Map<String, Long> history) {
+    // sort and remove duplicates so that every shard sees exactly the same input
+    List<String> sorted = new ArrayList<>(new TreeSet<>(classNames));
+
+    long knownTotal = 0;
+    int knownCount = 0;
+    for (String className : sorted) {
+      Long duration = history.get(className);
+      if (duration != null) {
+        knownTotal += duration;
+        knownCount++;
+      }
+    }
+
+    List<String> selected = new ArrayList<>();
+    if (knownCount == 0) {
+      for (String className : sorted) {
+        if (Math.floorMod(className.hashCode(), shardCount) == shardIndex) {
+          selected.add(className);
+        }
+      }
+      return selected;
+    }
+
+    long defaultDuration = knownTotal / knownCount;
+    // longest first; ties are broken by name so that the order is deterministic
+    Collections.sort(sorted, (c1, c2) -> {
+      int cmp = Long.compare(getDuration(history, c2, defaultDuration), getDuration(history, c1, defaultDuration));
+      return cmp != 0 ? cmp : c1.compareTo(c2);
+    });
+
+    long[] loads = new long[shardCount];
+    for (String className : sorted) {
+      int target = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (loads[i] < loads[target]) {
+          target = i;
+        }
+      }
+      loads[target] += getDuration(history, className, defaultDuration);
+      if (target == shardIndex) {
+        selected.add(className);
+      }
+    }
+    Collections.sort(selected);
+    return selected;
+  }
+
+  private static long getDuration(Map<String, Long> history, String className, long defaultDuration) {
+    Long duration = history.get(className);
+    return duration == null ? defaultDuration : duration;
+  }
+}
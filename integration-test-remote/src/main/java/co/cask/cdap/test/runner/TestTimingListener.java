@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test.runner;
+
+import co.cask.cdap.test.TestPhaseTimer;
+import com.google.common.base.Joiner;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RunListener} that records the duration of each test class and test method, with the time spent
+ * in each {@link TestPhaseTimer.Phase} of the test methods. It writes the timings as a JSON and a CSV report,
+ * and logs the slowest tests.
+ */
+final class TestTimingListener extends RunListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TestTimingListener.class);
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+  private final Map<String, ClassTiming> classTimings = new LinkedHashMap<>();
+  private final Map<Description, Long> startTimes = new HashMap<>();
+  private final Set<Description> failures = new HashSet<>();
+
+  @Override
+  public synchronized void testStarted(Description description) throws Exception {
+    TestPhaseTimer.reset();
+    startTimes.put(description, System.nanoTime());
+  }
+
+  @Override
+  public synchronized void testFailure(Failure failure) throws Exception {
+    failures.add(failure.getDescription());
+  }
+
+  @Override
+  public synchronized void testFinished(Description description) throws Exception {
+    Long startTime = startTimes.remove(description);
+    if (startTime == null) {
+      return;
+    }
+    long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    Map<String, Long> phases = new LinkedHashMap<>();
+    long phasesTotal = 0;
+    for (Map.Entry<TestPhaseTimer.Phase, Long> entry : TestPhaseTimer.getDurations().entrySet()) {
+      phases.put(entry.getKey().name(), entry.getValue());
+      phasesTotal += entry.getValue();
+    }
+    getClassTiming(description.getClassName()).methods.add(
+      new MethodTiming(description.getMethodName(), duration, Math.max(0, duration - phasesTotal),
+                       failures.remove(description), phases));
+  }
+
+  /**
+   * Records the duration of a test class, including its class level setup and teardown.
+   */
+  synchronized void classFinished(String className, long durationMillis) {
+    getClassTiming(className).durationMillis = durationMillis;
+  }
+
+  /**
+   * Returns the duration in milliseconds of each test class that finished.
+   */
+  synchronized Map<String, Long> getClassDurations() {
+    Map<String, Long> durations = new LinkedHashMap<>();
+    for (ClassTiming classTiming : classTimings.values()) {
+      durations.put(classTiming.className, classTiming.durationMillis);
+    }
+    return durations;
+  }
+
+  /**
+   * Writes the JSON and CSV reports to the given directory, with the given name prefix.
+   */
+  synchronized void writeReports(File dir, String name) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create directory " + dir);
+    }
+    File jsonFile = new File(dir, name + "-timings.json");
+    try (Writer writer = new FileWriter(jsonFile)) {
+      GSON.toJson(classTimings.values(), writer);
+    }
+
+    File csvFile = new File(dir, name + "-timings.csv");
+    try (Writer writer = new FileWriter(csvFile)) {
+      List<String> header = new ArrayList<>();
+      Collections.addAll(header, "class", "method", "duration_ms", "failed");
+      for (TestPhaseTimer.Phase phase : TestPhaseTimer.Phase.values()) {
+        header.add(phase.name().toLowerCase() + "_ms");
+      }
+      header.add("other_ms");
+      writer.write(Joiner.on(',').join(header));
+      writer.write('\n');
+
+      for (ClassTiming classTiming : classTimings.values()) {
+        for (MethodTiming methodTiming : classTiming.methods) {
+          List<Object> row = new ArrayList<>();
+          Collections.addAll(row, classTiming.className, methodTiming.methodName,
+                             methodTiming.durationMillis, methodTiming.failed);
+          for (TestPhaseTimer.Phase phase : TestPhaseTimer.Phase.values()) {
+            Long phaseDuration = methodTiming.phases.get(phase.name());
+            row.add(phaseDuration == null ? 0L : phaseDuration);
+          }
+          row.add(methodTiming.otherMillis);
+          writer.write(Joiner.on(',').join(row));
+          writer.write('\n');
+        }
+      }
+    }
+    LOG.info("Test timing reports written to {} and {}", jsonFile, csvFile);
+  }
+
+  /**
+   * Logs the given number of slowest test classes and test methods.
+   */
+  synchronized void logSlowest(int topN) {
+    List<ClassTiming> classes = new ArrayList<>(classTimings.values());
+    Collections.sort(classes, Comparator.comparingLong((ClassTiming timing) -> timing.durationMillis).reversed());
+    StringBuilder summary = new StringBuilder("Slowest test classes:");
+    for (ClassTiming classTiming : classes.subList(0, Math.min(topN, classes.size()))) {
+      summary.append(String.format("%n  %8d ms  %s", classTiming.durationMillis, classTiming.className));
+    }
+
+    List<String> methodNames = new ArrayList<>();
+    Map<String, MethodTiming> methods = new HashMap<>();
+    for (ClassTiming classTiming : classTimings.values()) {
+      for (MethodTiming methodTiming : classTiming.methods) {
+        String methodName = classTiming.className + "#" + methodTiming.methodName;
+        methodNames.add(methodName);
+        methods.put(methodName, methodTiming);
+      }
+    }
+    Collections.sort(methodNames, Comparator.comparingLong((String method) -> methods.get(method).durationMillis)
+      .reversed());
+    summary.append(String.format("%nSlowest test methods:"));
+    for (String methodName : methodNames.subList(0, Math.min(topN, methodNames.size()))) {
+      MethodTiming methodTiming = methods.get(methodName);
+      summary.append(String.format("%n  %8d ms  %s %s", methodTiming.durationMillis, methodName, methodTiming.phases));
+    }
+    LOG.info(summary.toString());
+  }
+
+  private ClassTiming getClassTiming(String className) {
+    ClassTiming classTiming = classTimings.get(className);
+    if (classTiming == null) {
+      classTiming = new ClassTiming(className);
+      classTimings.put(className, classTiming);
+    }
+    return classTiming;
+  }
+
+  /**
+   * Timing of one test class.
+   */
+  private static final class ClassTiming {
+    private final String className;
+    private long durationMillis;
+    private final List<MethodTiming> methods = new ArrayList<>();
+
+    private ClassTiming(String className) {
+      this.className = className;
+    }
+  }
+
+  /**
+   * Timing of one test method. The time not spent in any phase is reported as other.
+   */
+  private static final class MethodTiming {
+    private final String methodName;
+    private final long durationMillis;
+    private final long otherMillis;
+    private final boolean failed;
+    private final Map<String, Long> phases;
+
+    private MethodTiming(String methodName, long durationMillis, long otherMillis,
+                         boolean failed, Map<String, Long> phases) {
+      this.methodName = methodName;
+      this.durationMillis = durationMillis;
+      this.otherMillis = otherMillis;
+      this.failed = failed;
+      this.phases = phases;
+    }
+  }
+}
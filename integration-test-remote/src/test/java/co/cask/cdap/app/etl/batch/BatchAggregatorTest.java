@@ -149,7 +149,8 @@ public class BatchAggregatorTest extends ETLTestBase {
     ApplicationManager appManager = deployApplication(appId, request);
 
     // Deploy an application with a service to get partitionedFileset data for verification
-    ApplicationManager applicationManager = deployApplication(DatasetAccessApp.class);
+    ApplicationManager applicationManager =
+      deployCachedApplication(DatasetAccessApp.class.getSimpleName(), DatasetAccessApp.class);
     ServiceManager serviceManager = applicationManager.getServiceManager(
       SnapshotFilesetService.class.getSimpleName());
     serviceManager.start();
@@ -216,7 +216,8 @@ public class BatchJoinerTest extends ETLTestBase {
     workflowManager.waitForRun(ProgramRunStatus.COMPLETED, 15, TimeUnit.MINUTES);
 
     // Deploy an application with a service to get partitionedFileset data for verification
-    ApplicationManager applicationManager = deployApplication(DatasetAccessApp.class);
+    ApplicationManager applicationManager =
+      deployCachedApplication(DatasetAccessApp.class.getSimpleName(), DatasetAccessApp.class);
     ServiceManager serviceManager = applicationManager.getServiceManager(SnapshotFilesetService.class.getSimpleName());
     serviceManager.start();
     serviceManager.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
@@ -62,7 +62,7 @@ public class ExcelInputReaderTest extends ETLTestBase {
 
   @Before
   public void testSetup() throws Exception {
-    ApplicationManager applicationManager = deployApplication(UploadFile.class);
+    ApplicationManager applicationManager = deployCachedApplication("UploadFile", UploadFile.class);
     String fileSetName = UploadFile.FileSetService.class.getSimpleName();
     ServiceManager serviceManager = applicationManager.getServiceManager(fileSetName);
     serviceManager.start();
@@ -75,7 +75,7 @@ public class HivePluginTest extends ETLTestBase {
   public void testHivePlugins() throws Exception {
     installPluginFromMarket("hydrator-plugin-hive", "hive-plugins", "1.7.2-1.1.0");
 
-    ApplicationManager applicationManager = deployApplication(FileSetExample.class);
+    ApplicationManager applicationManager = deployCachedApplication(FileSetExample.NAME, FileSetExample.class);
     ServiceManager fileSetService = applicationManager.getServiceManager("FileSetService").start();
     fileSetService.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
     URL serviceURL = fileSetService.getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
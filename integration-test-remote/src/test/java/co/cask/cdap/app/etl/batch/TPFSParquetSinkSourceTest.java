@@ -71,7 +71,8 @@ public class TPFSParquetSinkSourceTest extends ETLTestBase {
 
   private void testTPFSWithProjection(Engine engine) throws Exception {
     // 1. Deploy an application with a service to get TPFS data for verification
-    ApplicationManager applicationManager = deployApplication(DatasetAccessApp.class);
+    ApplicationManager applicationManager =
+      deployCachedApplication(DatasetAccessApp.class.getSimpleName(), DatasetAccessApp.class);
     ServiceManager serviceManager = applicationManager.getServiceManager(TPFSService.class.getSimpleName());
     serviceManager.start();
     serviceManager.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
@@ -77,7 +77,7 @@ public class XMLReaderTest extends ETLTestBase {
 
   @Before
   public void testSetup() throws Exception {
-    ApplicationManager applicationManager = deployApplication(UploadFile.class);
+    ApplicationManager applicationManager = deployCachedApplication("UploadFile", UploadFile.class);
     ServiceManager serviceManager = applicationManager.getServiceManager(UploadFile.
                                                                            FileSetService.class.getSimpleName());
     serviceManager.start();
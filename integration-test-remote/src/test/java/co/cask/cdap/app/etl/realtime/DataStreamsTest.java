@@ -69,7 +69,7 @@ public class DataStreamsTest extends ETLTestBase {
   @Test
   public void testDataStreams() throws Exception {
 
-    ApplicationManager applicationManager = deployApplication(UploadFile.class);
+    ApplicationManager applicationManager = deployCachedApplication("UploadFile", UploadFile.class);
     String fileSetName = UploadFile.FileSetService.class.getSimpleName();
     ServiceManager serviceManager = applicationManager.getServiceManager(fileSetName);
     serviceManager.start();
@@ -166,7 +166,8 @@ public class WranglerTest extends ETLTestBase {
     workflowManager.waitForRun(ProgramRunStatus.COMPLETED, 10, TimeUnit.MINUTES);
 
     // Deploy an application with a service to get partitionedFileset data for verification
-    ApplicationManager appManager = deployApplication(DatasetAccessApp.class);
+    ApplicationManager appManager =
+      deployCachedApplication(DatasetAccessApp.class.getSimpleName(), DatasetAccessApp.class);
     ServiceManager serviceManager = startService(appManager, SnapshotFilesetService.class.getSimpleName());
 
     org.apache.avro.Schema avroOutputSchema = new org.apache.avro.Schema.Parser().parse(sinkSchema.toString());
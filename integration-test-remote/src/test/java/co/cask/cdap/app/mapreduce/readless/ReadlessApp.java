@@ -21,7 +21,6 @@ import co.cask.cdap.api.Resources;
 import co.cask.cdap.api.app.AbstractApplication;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Input;
-import co.cask.cdap.api.data.batch.InputFormatProvider;
 import co.cask.cdap.api.data.batch.Output;
 import co.cask.cdap.api.dataset.DatasetManagementException;
 import co.cask.cdap.api.dataset.DatasetProperties;
@@ -30,6 +29,7 @@ import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Increment;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.mapreduce.AbstractMapReduce;
 import co.cask.cdap.api.mapreduce.MapReduceTaskContext;
@@ -37,27 +37,19 @@ import co.cask.cdap.api.service.AbstractService;
 import co.cask.cdap.api.service.http.AbstractHttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpServiceRequest;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
+import co.cask.cdap.synthetic.SyntheticInputFormat;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Writable;
-import org.apache.hadoop.mapreduce.InputFormat;
-import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.DataInput;
-import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
@@ -77,6 +69,35 @@ public class ReadlessApp extends AbstractApplication {
   public static final String SERVICE_NAME = "CountService";
   public static final String MAPREDUCE_NAME = "LineCounter";
 
+  // runtime arguments of the LineCounter, to benchmark readless increments
+  public static final String NUM_SPLITS = "num.splits";
+  public static final String NUM_LINES = "num.lines";
+  // the number of rows that the increments are spread over. With one key, all increments go to one hot row
+  public static final String NUM_KEYS = "num.keys";
+  public static final String INCREMENT_MODE = "increment.mode";
+
+  /**
+   * How the mappers increment the counters.
+   */
+  public enum IncrementMode {
+    // a readless increment for every line
+    INCREMENT,
+    // an increment that reads the incremented value for every line
+    INCREMENT_AND_GET,
+    // one increment per row at the end of each mapper, with the sum of its lines for the row
+    PRE_AGGREGATE
+  }
+
+  /**
+   * Hadoop counters of the mappers.
+   */
+  public enum Counters {
+    INCREMENT_CALLS,
+    INCREMENT_NANOS
+  }
+
+  private static final String COUNTERS_ROW = "counters";
+
   @Override
   public void configure() {
     setDescription("A an app that uses datasets");
@@ -93,13 +114,39 @@ public class ReadlessApp extends AbstractApplication {
   }
 
   private static Map<String, Long> getCounters(Table counters) {
-    Row row = counters.get(new Get("counters"));
-    Long increment = row.getLong("incr");
+    Row row = counters.get(new Get(COUNTERS_ROW));
     Long mapCount = row.getLong("mapCount");
     Long reduceCount = row.getLong("reduceCount");
-    return ImmutableMap.of("increments", increment == null ? -1 : increment,
-                           "mapCount", mapCount == null ? -1 : mapCount,
-                           "reduceCount", reduceCount == null ? -1 : reduceCount);
+    Long incrementNanos = row.getLong("incrementNanos");
+
+    // increments are spread over the counters row and the rows of the other keys
+    long increment = -1;
+    long rows = 0;
+    long maxRowIncrements = 0;
+    try (Scanner scanner = counters.scan(Bytes.toBytes(COUNTERS_ROW),
+                                         Bytes.stopKeyForPrefix(Bytes.toBytes(COUNTERS_ROW)))) {
+      Row keyRow;
+      while ((keyRow = scanner.next()) != null) {
+        Long rowIncrements = keyRow.getLong("incr");
+        if (rowIncrements != null) {
+          increment = Math.max(increment, 0) + rowIncrements;
+          rows++;
+          maxRowIncrements = Math.max(maxRowIncrements, rowIncrements);
+        }
+      }
+    }
+    return ImmutableMap.<String, Long>builder()
+      .put("increments", increment)
+      .put("mapCount", mapCount == null ? -1 : mapCount)
+      .put("reduceCount", reduceCount == null ? -1 : reduceCount)
+      .put("incrementNanos", incrementNanos == null ? -1 : incrementNanos)
+      .put("rows", rows)
+      .put("maxRowIncrements", maxRowIncrements)
+      .build();
+  }
+
+  private static byte[] getRow(long key, int numKeys) {
+    return numKeys <= 1 ? Bytes.toBytes(COUNTERS_ROW) : Bytes.toBytes(COUNTERS_ROW + ":" + (key % numKeys));
   }
 
   public static class CountsHandler extends AbstractHttpServiceHandler {
@@ -115,7 +162,13 @@ public class ReadlessApp extends AbstractApplication {
     public void reset(HttpServiceRequest request, HttpServiceResponder responder)
       throws DatasetManagementException {
       Table counters = getContext().getDataset("counters");
-      counters.delete(new Delete("counters"));
+      try (Scanner scanner = counters.scan(Bytes.toBytes(COUNTERS_ROW),
+                                           Bytes.stopKeyForPrefix(Bytes.toBytes(COUNTERS_ROW)))) {
+        Row row;
+        while ((row = scanner.next()) != null) {
+          counters.delete(new Delete(row.getRow()));
+        }
+      }
       responder.sendStatus(200);
     }
   }
@@ -133,17 +186,25 @@ public class ReadlessApp extends AbstractApplication {
     @Override
     protected void initialize() throws Exception {
       getContext().addOutput(Output.ofDataset("counters"));
-      getContext().addInput(Input.of("mock", new InputFormatProvider() {
-        @Override
-        public String getInputFormatClassName() {
-          return MockInputFormat.class.getName();
-        }
-        @Override
-        public Map<String, String> getInputFormatConfiguration() {
-          return Collections.emptyMap();
-        }
-      }));
+      Map<String, String> args = getContext().getRuntimeArguments();
+      int numSplits = Integer.parseInt(args.getOrDefault(NUM_SPLITS, "2"));
+      long numLines = Long.parseLong(args.getOrDefault(NUM_LINES, "10"));
+      // the key of each line is the index of the row it increments. Other synthetic.* arguments, such as
+      // synthetic.key.distribution, are passed through to the input format
+      getContext().addInput(Input.of("synthetic", SyntheticInputFormat.builder()
+        .setSplits(numSplits)
+        .setRecords(numSplits * numLines)
+        .setRecordSize(16)
+        .setKeys(Math.max(Integer.parseInt(args.getOrDefault(NUM_KEYS, "1")), 1))
+        .setProperties(args)
+        .build()));
       Job job = getContext().getHadoopJob();
+      for (String key : new String[] { NUM_KEYS, INCREMENT_MODE }) {
+        String value = getContext().getRuntimeArguments().get(key);
+        if (value != null) {
+          job.getConfiguration().set(key, value);
+        }
+      }
       job.setMapperClass(CountMapper.class);
       job.setReducerClass(CountReducer.class);
       job.setNumReduceTasks(1);
@@ -156,84 +217,20 @@ public class ReadlessApp extends AbstractApplication {
     }
   }
 
-  public static class MockInputFormat extends InputFormat<Long, String> {
-    @Override
-    public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
-      int numSplits = context.getConfiguration().getInt("num.splits", 2);
-      List<InputSplit> splits = new ArrayList<>(numSplits);
-      while (numSplits-- > 0) {
-        splits.add(new MockSplit());
-      }
-      return splits;
-    }
-    @Override
-    public RecordReader<Long, String> createRecordReader(InputSplit split, TaskAttemptContext context)
-      throws IOException, InterruptedException {
-      return new MockRecordReader();
-    }
-  }
-
-  public static class MockSplit extends InputSplit implements Writable {
-    @Override
-    public long getLength() throws IOException, InterruptedException {
-      return 0;
-    }
-    @Override
-    public String[] getLocations() throws IOException, InterruptedException {
-      return new String[0];
-    }
-
-    @Override
-    public void write(DataOutput out) throws IOException {
-    }
-
-    @Override
-    public void readFields(DataInput in) throws IOException {
-    }
-  }
-
-  public static class MockRecordReader extends RecordReader<Long, String> {
-
-    private int numLines;
-    private int linesEmitted = 0;
-
-    @Override
-    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
-      numLines = context.getConfiguration().getInt("num.lines", 10);
-    }
-
-    @Override
-    public boolean nextKeyValue() throws IOException, InterruptedException {
-      return linesEmitted++ < numLines;
-    }
-
-    @Override
-    public Long getCurrentKey() throws IOException, InterruptedException {
-      return (long) linesEmitted;
-    }
-
-    @Override
-    public String getCurrentValue() throws IOException, InterruptedException {
-      return String.valueOf(linesEmitted);
-    }
-
-    @Override
-    public float getProgress() throws IOException, InterruptedException {
-      return ((float) linesEmitted) / numLines;
-    }
-
-    @Override
-    public void close() throws IOException {
-    }
-  }
-
-  public static class CountMapper extends Mapper<Long, String, LongWritable, LongWritable>
+  public static class CountMapper extends Mapper<LongWritable, Text, LongWritable, LongWritable>
     implements ProgramLifecycle<MapReduceTaskContext> {
 
     private static final LongWritable ONE = new LongWritable(1);
     private Table table;
     // TODO: add this back after (CDAP-6099) is fixed.
     private long mapCount = 0L;
+    private int numKeys;
+    private IncrementMode mode;
+    private byte[][] rows;
+    // increments of each row, when they are pre-aggregated
+    private long[] rowIncrements;
+    private long incrementNanos;
+    private Counter incrementCalls;
 
     @Override
     public void initialize(MapReduceTaskContext context) throws Exception {
@@ -241,17 +238,53 @@ public class ReadlessApp extends AbstractApplication {
     }
 
     @Override
-    protected void map(Long key, String value, Context context)
+    protected void setup(Context context) throws IOException, InterruptedException {
+      numKeys = Math.max(context.getConfiguration().getInt(NUM_KEYS, 1), 1);
+      mode = IncrementMode.valueOf(context.getConfiguration().get(INCREMENT_MODE, IncrementMode.INCREMENT.name()));
+      rows = new byte[numKeys][];
+      for (int i = 0; i < numKeys; i++) {
+        rows[i] = getRow(i, numKeys);
+      }
+      rowIncrements = new long[numKeys];
+      incrementCalls = context.getCounter(Counters.INCREMENT_CALLS);
+    }
+
+    @Override
+    protected void map(LongWritable key, Text value, Context context)
       throws IOException, InterruptedException {
       mapCount++;
-      table.increment(new Increment("counters").add("incr", 1L));
+      int keyIndex = (int) (key.get() % numKeys);
+      long startTime = System.nanoTime();
+      switch (mode) {
+        case INCREMENT:
+          table.increment(new Increment(rows[keyIndex]).add("incr", 1L));
+          incrementCalls.increment(1);
+          break;
+        case INCREMENT_AND_GET:
+          table.incrementAndGet(new Increment(rows[keyIndex]).add("incr", 1L));
+          incrementCalls.increment(1);
+          break;
+        case PRE_AGGREGATE:
+          rowIncrements[keyIndex]++;
+          break;
+      }
+      incrementNanos += System.nanoTime() - startTime;
       context.write(ONE, ONE);
     }
 
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
+      long startTime = System.nanoTime();
+      for (int i = 0; i < numKeys; i++) {
+        if (rowIncrements[i] > 0) {
+          table.increment(new Increment(rows[i]).add("incr", rowIncrements[i]));
+          incrementCalls.increment(1);
+        }
+      }
+      incrementNanos += System.nanoTime() - startTime;
+      context.getCounter(Counters.INCREMENT_NANOS).increment(incrementNanos);
       // TODO: move this into destroy() after (CDAP-6099) is fixed.
-      table.increment(new Increment("counters").add("mapCount", mapCount));
+      table.increment(new Increment(COUNTERS_ROW).add("mapCount", mapCount).add("incrementNanos", incrementNanos));
     }
 
     @Override
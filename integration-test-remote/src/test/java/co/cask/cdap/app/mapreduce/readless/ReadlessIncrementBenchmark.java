@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.app.mapreduce.readless;
+
+import co.cask.cdap.internal.guava.reflect.TypeToken;
+import co.cask.cdap.proto.ProgramRunStatus;
+import co.cask.cdap.proto.RunRecord;
+import co.cask.cdap.test.ApplicationManager;
+import co.cask.cdap.test.AudiTestBase;
+import co.cask.cdap.test.MapReduceManager;
+import co.cask.cdap.test.ServiceManager;
+import co.cask.cdap.test.TestPhaseTimer;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import io.cdap.common.http.HttpRequest;
+import io.cdap.common.http.HttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks readless increments with the LineCounter of {@link ReadlessApp}, by sweeping the number of splits,
+ * the lines per split, the number of rows incremented, and how the rows are incremented. For each combination,
+ * it reports the increments per second of the MapReduce and of the increment calls in a mapper, and how much
+ * of the increments went to the hottest row, which is the share of the load on the region that holds it.
+ *
+ * This is not named like a test, so that it only runs when it is selected, for instance with
+ * {@code mvn test -Dtest=ReadlessIncrementBenchmark -DinstanceUri=<HostAndPort>}. The sweep is configured with
+ * comma separated values of {@code readless.benchmark.splits}, {@code readless.benchmark.lines},
+ * {@code readless.benchmark.keys} and {@code readless.benchmark.modes}.
+ */
+public class ReadlessIncrementBenchmark extends AudiTestBase {
+  private static final Logger LOG = LoggerFactory.getLogger(ReadlessIncrementBenchmark.class);
+  private static final Type COUNTERS_TYPE = new TypeToken<Map<String, Long>>() { }.getType();
+  private static final Gson GSON = new Gson();
+
+  private static final List<Integer> SPLITS = getIntegers("readless.benchmark.splits", "2,8");
+  private static final List<Integer> LINES = getIntegers("readless.benchmark.lines", "1000,10000");
+  private static final List<Integer> KEYS = getIntegers("readless.benchmark.keys", "1,1000");
+  private static final String MODES = System.getProperty("readless.benchmark.modes",
+                                                         Joiner.on(',').join(ReadlessApp.IncrementMode.values()));
+  private static final long TIMEOUT_MINUTES = Long.getLong("readless.benchmark.timeout.minutes", 30L);
+
+  @Test
+  public void benchmark() throws Exception {
+    ApplicationManager appManager = deployCachedApplication(ReadlessApp.class.getSimpleName(), ReadlessApp.class);
+    ServiceManager serviceManager = appManager.getServiceManager(ReadlessApp.SERVICE_NAME).start();
+    URL serviceURL = serviceManager.getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    MapReduceManager mapReduceManager = appManager.getMapReduceManager(ReadlessApp.MAPREDUCE_NAME);
+
+    List<Result> results = new ArrayList<>();
+    int runs = 0;
+    for (String modeName : Splitter.on(',').trimResults().omitEmptyStrings().split(MODES)) {
+      ReadlessApp.IncrementMode mode = ReadlessApp.IncrementMode.valueOf(modeName);
+      for (int splits : SPLITS) {
+        for (int lines : LINES) {
+          for (int keys : KEYS) {
+            getRestClient().execute(HttpRequest.put(new URL(serviceURL, "reset")).build(),
+                                    getClientConfig().getAccessToken(), HttpURLConnection.HTTP_OK);
+            mapReduceManager.start(ImmutableMap.of(ReadlessApp.NUM_SPLITS, String.valueOf(splits),
+                                                   ReadlessApp.NUM_LINES, String.valueOf(lines),
+                                                   ReadlessApp.NUM_KEYS, String.valueOf(keys),
+                                                   ReadlessApp.INCREMENT_MODE, mode.name()));
+            mapReduceManager.waitForRuns(ProgramRunStatus.COMPLETED, ++runs, TIMEOUT_MINUTES, TimeUnit.MINUTES);
+
+            Map<String, Long> counters = getCounters(serviceURL);
+            long expected = (long) splits * lines;
+            Assert.assertEquals(Long.valueOf(expected), counters.get("increments"));
+            Assert.assertEquals(Long.valueOf(expected), counters.get("mapCount"));
+            Result result = new Result(mode, splits, lines, keys, getLatestRun(mapReduceManager), counters);
+            LOG.info("Readless increment benchmark: {}", result);
+            results.add(result);
+          }
+        }
+      }
+    }
+    writeReport(results);
+  }
+
+  private Map<String, Long> getCounters(URL serviceURL) throws Exception {
+    HttpResponse response = getRestClient().execute(HttpRequest.get(new URL(serviceURL, "get")).build(),
+                                                    getClientConfig().getAccessToken(), HttpURLConnection.HTTP_OK);
+    return GSON.fromJson(response.getResponseBodyAsString(), COUNTERS_TYPE);
+  }
+
+  private static RunRecord getLatestRun(MapReduceManager mapReduceManager) {
+    RunRecord latest = null;
+    for (RunRecord run : mapReduceManager.getHistory(ProgramRunStatus.COMPLETED)) {
+      if (latest == null || run.getStartTs() > latest.getStartTs()) {
+        latest = run;
+      }
+    }
+    return latest;
+  }
+
+  private static void writeReport(List<Result> results) throws IOException {
+    File dir = TestPhaseTimer.getReportDir();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create directory " + dir);
+    }
+    File csvFile = new File(dir, "readless-increment-benchmark.csv");
+    try (Writer writer = new FileWriter(csvFile)) {
+      writer.write("mode,splits,lines,keys,increments,duration_s,increments_per_s,increment_calls_per_s," +
+                     "rows,hottest_row_share\n");
+      for (Result result : results) {
+        writer.write(Joiner.on(',').join(result.mode, result.splits, result.lines, result.keys, result.increments,
+                                         result.durationSeconds, result.getIncrementsPerSecond(),
+                                         result.getTaskIncrementsPerSecond(), result.rows,
+                                         result.getHottestRowShare()));
+        writer.write('\n');
+      }
+    }
+    LOG.info("Readless increment benchmark report written to {}", csvFile);
+  }
+
+  private static List<Integer> getIntegers(String property, String defaultValue) {
+    List<Integer> values = new ArrayList<>();
+    for (String value : Splitter.on(',').trimResults().omitEmptyStrings()
+      .split(System.getProperty(property, defaultValue))) {
+      values.add(Integer.parseInt(value));
+    }
+    return values;
+  }
+
+  /**
+   * The result of one run of the benchmark.
+   */
+  private static final class Result {
+    private final ReadlessApp.IncrementMode mode;
+    private final int splits;
+    private final int lines;
+    private final int keys;
+    private final long increments;
+    private final long durationSeconds;
+    private final long incrementNanos;
+    private final long rows;
+    private final long maxRowIncrements;
+
+    private Result(ReadlessApp.IncrementMode mode, int splits, int lines, int keys, RunRecord run,
+                   Map<String, Long> counters) {
+      this.mode = mode;
+      this.splits = splits;
+      this.lines = lines;
+      this.keys = keys;
+      this.increments = counters.get("increments");
+      // run records have a precision of seconds
+      this.durationSeconds = Math.max(run.getStopTs() - run.getStartTs(), 1L);
+      this.incrementNanos = counters.get("incrementNanos");
+      this.rows = counters.get("rows");
+      this.maxRowIncrements = counters.get("maxRowIncrements");
+    }
+
+    private long getIncrementsPerSecond() {
+      return increments / durationSeconds;
+    }
+
+    // the rate of the increment calls of a single mapper, which leaves out the overhead of the MapReduce
+    private long getTaskIncrementsPerSecond() {
+      return incrementNanos <= 0 ? 0 : increments * TimeUnit.SECONDS.toNanos(1) / incrementNanos;
+    }
+
+    private double getHottestRowShare() {
+      return increments <= 0 ? 0 : (double) maxRowIncrements / increments;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("mode=%s splits=%d lines=%d keys=%d increments=%d duration=%ds increments/s=%d " +
+                             "task increments/s=%d rows=%d hottest row share=%.3f",
+                           mode, splits, lines, keys, increments, durationSeconds, getIncrementsPerSecond(),
+                           getTaskIncrementsPerSecond(), rows, getHottestRowShare());
+    }
+  }
+}
@@ -16,10 +16,8 @@
 
 package co.cask.cdap.app.mapreduce.readless;
 
-import co.cask.cdap.common.UnauthenticatedException;
 import co.cask.cdap.internal.guava.reflect.TypeToken;
 import co.cask.cdap.proto.ProgramRunStatus;
-import co.cask.cdap.security.spi.authorization.UnauthorizedException;
 import co.cask.cdap.test.ApplicationManager;
 import co.cask.cdap.test.AudiTestBase;
 import co.cask.cdap.test.MapReduceManager;
@@ -32,13 +30,10 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
-import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 @Category({
   // this is a flaky test when run against SDK, because of CDAP-7227
@@ -53,11 +48,8 @@ public class ReadlessIncrementTest extends AudiTestBase {
   // The three values must be the same.
 
   @Test
-  public void testReadlessIncrementsInMapReduce()
-    throws IOException, InterruptedException, TimeoutException, UnauthenticatedException,
-    UnauthorizedException, ExecutionException {
-
-    ApplicationManager appManager = deployApplication(ReadlessApp.class);
+  public void testReadlessIncrementsInMapReduce() throws Exception {
+    ApplicationManager appManager = deployCachedApplication(ReadlessApp.class.getSimpleName(), ReadlessApp.class);
 
     ServiceManager serviceManager = appManager.getServiceManager(ReadlessApp.SERVICE_NAME);
     serviceManager.start();
@@ -65,6 +57,7 @@ public class ReadlessIncrementTest extends AudiTestBase {
     MapReduceManager mapReduceManager = appManager.getMapReduceManager(ReadlessApp.MAPREDUCE_NAME);
     mapReduceManager.start();
     mapReduceManager.waitForRun(ProgramRunStatus.COMPLETED, 5, TimeUnit.MINUTES);
+    profileMapReduce(TEST_NAMESPACE.app(ReadlessApp.class.getSimpleName()).mr(ReadlessApp.MAPREDUCE_NAME));
 
     serviceManager.waitForRun(ProgramRunStatus.RUNNING, 5, TimeUnit.SECONDS);
     URL url = new URL(serviceManager.getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS), "get");
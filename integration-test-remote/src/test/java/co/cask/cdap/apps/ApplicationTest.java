@@ -37,7 +37,7 @@ public class ApplicationTest extends AudiTestBase {
 
   @Test
   public void test() throws Exception {
-    ApplicationManager applicationManager = deployApplication(FileSetExample.class);
+    ApplicationManager applicationManager = deployCachedApplication(FileSetExample.NAME, FileSetExample.class);
     ServiceManager fileSetService = applicationManager.getServiceManager(FileSetService.class.getSimpleName()).start();
     fileSetService.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
@@ -61,7 +61,7 @@ public class DatasetTest extends AudiTestBase {
     // there should be no datasets in the test namespace
     Assert.assertEquals(0, datasetClient.list(TEST_NAMESPACE).size());
 
-    ApplicationManager applicationManager = deployApplication(WordCount.class);
+    ApplicationManager applicationManager = deployCachedApplication("WordCount", WordCount.class);
 
     // number of datasets which were created by the wordcount app
     int appDatasetsCount = datasetClient.list(TEST_NAMESPACE).size();
@@ -50,7 +50,7 @@ public class FileSetTest extends AudiTestBase {
 
   @Test
   public void test() throws Exception {
-    ApplicationManager applicationManager = deployApplication(FileSetExample.class);
+    ApplicationManager applicationManager = deployCachedApplication(FileSetExample.NAME, FileSetExample.class);
     DatasetClient datasetClient = getDatasetClient();
     List<DatasetSpecificationSummary> datasetSpecificationsList = datasetClient.list(TEST_NAMESPACE);
     Assert.assertEquals(2, datasetSpecificationsList.size());
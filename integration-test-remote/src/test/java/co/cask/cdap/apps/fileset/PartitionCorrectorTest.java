@@ -46,7 +46,7 @@ public class PartitionCorrectorTest extends AudiTestBase {
 
   @Test
   public void test() throws Exception {
-    ApplicationManager applicationManager = deployApplication(PFSApp.class);
+    ApplicationManager applicationManager = deployCachedApplication(PFSApp.class.getSimpleName(), PFSApp.class);
 
     ServiceManager pfsService = applicationManager.getServiceManager("PFSService").start();
     pfsService.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
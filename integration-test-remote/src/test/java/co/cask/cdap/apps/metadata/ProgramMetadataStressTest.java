@@ -42,5 +42,6 @@ public class ProgramMetadataStressTest extends AudiTestBase {
       applicationManager.getMapReduceManager(PROGRAM.getProgram());
     mapReduceManager.start();
     mapReduceManager.waitForRun(ProgramRunStatus.COMPLETED, 5, TimeUnit.MINUTES);
+    profileMapReduce(PROGRAM);
   }
 }
@@ -78,7 +78,8 @@ public class ProgramMetadataTest extends AudiTestBase {
   @Test
   public void testWithLineage() throws Exception {
     ProgramClient programClient = getProgramClient();
-    ApplicationManager applicationManager = deployApplication(ProgramMetadataApp.class);
+    ApplicationManager applicationManager =
+      deployCachedApplication(ProgramMetadataApp.APP_NAME, ProgramMetadataApp.class);
 
     long startTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
     long endTime = startTime + 10000;
@@ -110,7 +111,7 @@ public class ProgramMetadataTest extends AudiTestBase {
 
   @Test
   public void testSearchUsingSystemMetadata() throws Exception {
-    deployApplication(ProgramMetadataApp.class);
+    deployCachedApplication(ProgramMetadataApp.APP_NAME, ProgramMetadataApp.class);
     assertArtifactSearch();
     assertAppSearch();
     assertProgramSearch();
@@ -22,6 +22,7 @@ import co.cask.cdap.api.app.AbstractApplication;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Input;
 import co.cask.cdap.api.data.batch.Output;
+import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.data.schema.UnsupportedTypeException;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
@@ -35,16 +36,21 @@ import co.cask.cdap.api.service.http.HttpServiceRequest;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
 import co.cask.cdap.api.spark.AbstractSpark;
 import co.cask.cdap.api.workflow.AbstractWorkflow;
+import co.cask.cdap.synthetic.SyntheticInputFormat;
 import com.google.common.base.Charsets;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.Map;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -58,6 +64,15 @@ public class SparkPageRankApp extends AbstractApplication {
   public static final String SERVICE_HANDLERS = "SparkPageRankService";
   public static final String BACKLINK_URL_DATASET = "backlinkURLDataset";
 
+  // runtime arguments of the GraphGenerator
+  public static final String GRAPH_VERTICES = "graph.vertices";
+  // the average number of links from a page
+  public static final String GRAPH_DEGREE = "graph.degree";
+  // the exponent of the power law of the number of links to a page
+  public static final String GRAPH_SKEW = "graph.skew";
+  public static final String GRAPH_SEED = "graph.seed";
+  public static final String GRAPH_SPLITS = "graph.splits";
+
   @Override
   public void configure() {
     setName("SparkPageRank");
@@ -74,6 +89,9 @@ public class SparkPageRankApp extends AbstractApplication {
     // Runs Spark followed by a MapReduce in a Workflow
     addWorkflow(new PageRankWorkflow());
 
+    // Generates a synthetic graph into the backlink dataset, to benchmark the workflow on large graphs
+    addMapReduce(new GraphGenerator());
+
     // Service to retrieve process data
     addService(SERVICE_HANDLERS, new SparkPageRankServiceHandler());
 
@@ -175,7 +193,99 @@ public class SparkPageRankApp extends AbstractApplication {
     @Path(TRANSFORM_PATH + "/{pr}")
     @GET
     public void transform(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("pr") String pr) {
-      responder.sendString(String.valueOf((int) (Math.round(Double.parseDouble(pr) * 10))));
+      responder.sendString(String.valueOf(transform(Double.parseDouble(pr))));
+    }
+
+    /**
+     * Transforms a batch of page ranks, given as a JSON array of numbers, into a JSON array of the transformed
+     * ranks in the same order, so that a partition of ranks takes a few requests instead of one per page.
+     */
+    @Path(TRANSFORM_PATH)
+    @POST
+    public void transformAll(HttpServiceRequest request, HttpServiceResponder responder) {
+      double[] pageRanks;
+      try {
+        pageRanks = GSON.fromJson(Charsets.UTF_8.decode(request.getContent()).toString(), double[].class);
+      } catch (JsonSyntaxException e) {
+        responder.sendError(HttpURLConnection.HTTP_BAD_REQUEST, "The page ranks must be a JSON array of numbers.");
+        return;
+      }
+      if (pageRanks == null) {
+        responder.sendError(HttpURLConnection.HTTP_BAD_REQUEST, "The page ranks must be a JSON array of numbers.");
+        return;
+      }
+      int[] transformed = new int[pageRanks.length];
+      for (int i = 0; i < pageRanks.length; i++) {
+        transformed[i] = transform(pageRanks[i]);
+      }
+      responder.sendJson(transformed);
+    }
+
+    // transforms a page rank on a scale of 1 to 10
+    private static int transform(double pageRank) {
+      return (int) Math.round(pageRank * 10);
+    }
+  }
+
+  /**
+   * MapReduce job which writes a synthetic web graph to the backlink dataset. The number of links to a page follows
+   * a power law, with the first pages being the most linked to, and the links from each page are spread uniformly
+   * over the pages. Each link is written as a "source destination" pair, which is also its key, so that a link
+   * that is generated twice is only written once.
+   */
+  public static class GraphGenerator extends AbstractMapReduce {
+
+    @Override
+    public void initialize() throws Exception {
+      MapReduceContext context = getContext();
+      Map<String, String> args = context.getRuntimeArguments();
+      long vertices = Long.parseLong(args.getOrDefault(GRAPH_VERTICES, "1000"));
+      int degree = Integer.parseInt(args.getOrDefault(GRAPH_DEGREE, "8"));
+
+      // the key of each record is the destination of a link, and its source is drawn from a random number
+      Schema schema = Schema.recordOf("link", Schema.Field.of("destination", Schema.of(Schema.Type.LONG)),
+                                      Schema.Field.of("source", Schema.of(Schema.Type.LONG)));
+      context.addInput(Input.of("graph", SyntheticInputFormat.builder()
+        .setRecords(vertices * degree)
+        .setSplits(Integer.parseInt(args.getOrDefault(GRAPH_SPLITS, "4")))
+        .setSchema(schema, "destination")
+        .setRecordSize(0)
+        .setKeys(vertices)
+        .setZipfKeys(Double.parseDouble(args.getOrDefault(GRAPH_SKEW, "1.0")))
+        .setSeed(Long.parseLong(args.getOrDefault(GRAPH_SEED, "0")))
+        .build()));
+      context.addOutput(Output.ofDataset(BACKLINK_URL_DATASET));
+
+      Job job = context.getHadoopJob();
+      job.getConfiguration().setLong(GRAPH_VERTICES, vertices);
+      job.setMapperClass(LinkWriter.class);
+      job.setNumReduceTasks(0);
+    }
+
+    /**
+     * A mapper that writes a link for each synthetic record.
+     */
+    public static class LinkWriter extends Mapper<LongWritable, Text, byte[], byte[]> {
+
+      private long vertices;
+
+      @Override
+      protected void setup(Context context) {
+        vertices = context.getConfiguration().getLong(GRAPH_VERTICES, 1000L);
+      }
+
+      @Override
+      protected void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+        // the record is "destination,source"
+        String record = value.toString();
+        long source = Long.parseLong(record.substring(record.indexOf(',') + 1)) % vertices;
+        byte[] link = Bytes.toBytes(getPageURL(source) + " " + getPageURL(key.get()));
+        context.write(link, link);
+      }
+
+      private static String getPageURL(long page) {
+        return "http://example.com/page" + page;
+      }
     }
   }
 
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.apps.spark;
+
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.proto.ProgramRunStatus;
+import co.cask.cdap.proto.RunRecord;
+import co.cask.cdap.proto.id.ApplicationId;
+import co.cask.cdap.proto.id.ProgramId;
+import co.cask.cdap.test.ApplicationManager;
+import co.cask.cdap.test.AudiTestBase;
+import co.cask.cdap.test.MapReduceManager;
+import co.cask.cdap.test.ProgramManager;
+import co.cask.cdap.test.ServiceManager;
+import co.cask.cdap.test.TestPhaseTimer;
+import co.cask.cdap.test.WorkflowManager;
+import co.cask.cdap.test.suite.category.RequiresSpark2;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link SparkPageRankApp.PageRankWorkflow} on synthetic graphs of several sizes, which are written
+ * to the backlink dataset by the {@link SparkPageRankApp.GraphGenerator}. For each size, it reports the duration of
+ * the workflow and of its Spark program, the time per iteration and the bytes shuffled by the Spark program, to
+ * size the resources of Spark executors for graph workloads.
+ *
+ * This is not named like a test, so that it only runs when it is selected, for instance with
+ * {@code mvn test -Dtest=SparkPageRankBenchmark -DinstanceUri=<HostAndPort>}. The graphs are configured with
+ * {@code pagerank.benchmark.vertices} (comma separated), {@code pagerank.benchmark.degree} and
+ * {@code pagerank.benchmark.skew}.
+ */
+@Category({
+  RequiresSpark2.class
+})
+public class SparkPageRankBenchmark extends AudiTestBase {
+  private static final Logger LOG = LoggerFactory.getLogger(SparkPageRankBenchmark.class);
+
+  private static final List<Long> VERTICES = getVertices("pagerank.benchmark.vertices", "10000,100000,1000000");
+  private static final int DEGREE = Integer.getInteger("pagerank.benchmark.degree", 8);
+  private static final String SKEW = System.getProperty("pagerank.benchmark.skew", "1.0");
+  private static final int ITERATIONS = Integer.getInteger("pagerank.benchmark.iterations", 10);
+  // a convergence check materializes every iteration, so that iterations can be timed. The default threshold is
+  // low enough that it does not stop the iterations early
+  private static final String CONVERGENCE_THRESHOLD =
+    System.getProperty("pagerank.benchmark.convergence.threshold", "1e-9");
+  private static final String PARTITIONS = System.getProperty("pagerank.benchmark.partitions");
+  private static final long TIMEOUT_MINUTES = Long.getLong("pagerank.benchmark.timeout.minutes", 60L);
+
+  private static final ApplicationId APP = TEST_NAMESPACE.app("SparkPageRank");
+  private static final ProgramId GRAPH_GENERATOR = APP.mr(SparkPageRankApp.GraphGenerator.class.getSimpleName());
+  private static final ProgramId PAGE_RANK_SPARK = APP.spark(SparkPageRankApp.PageRankSpark.class.getSimpleName());
+
+  @Test
+  public void benchmark() throws Exception {
+    ApplicationManager appManager = deployApplication(SparkPageRankApp.class);
+    // the Spark program transforms the ranks with the service
+    ServiceManager serviceManager = appManager.getServiceManager(SparkPageRankApp.SERVICE_HANDLERS).start();
+    serviceManager.waitForRun(ProgramRunStatus.RUNNING, PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    MapReduceManager generatorManager = appManager.getMapReduceManager(GRAPH_GENERATOR.getProgram());
+    WorkflowManager workflowManager =
+      appManager.getWorkflowManager(SparkPageRankApp.PageRankWorkflow.class.getSimpleName());
+
+    List<Result> results = new ArrayList<>();
+    int runs = 0;
+    for (long vertices : VERTICES) {
+      for (String dataset : new String[] { SparkPageRankApp.BACKLINK_URL_DATASET, "ranks", "rankscount" }) {
+        getDatasetClient().truncate(TEST_NAMESPACE.dataset(dataset));
+      }
+      runs++;
+      generatorManager.start(ImmutableMap.of(SparkPageRankApp.GRAPH_VERTICES, String.valueOf(vertices),
+                                             SparkPageRankApp.GRAPH_DEGREE, String.valueOf(DEGREE),
+                                             SparkPageRankApp.GRAPH_SKEW, SKEW));
+      generatorManager.waitForRuns(ProgramRunStatus.COMPLETED, runs, TIMEOUT_MINUTES, TimeUnit.MINUTES);
+      profileMapReduce(GRAPH_GENERATOR);
+
+      Map<String, String> args = new HashMap<>();
+      args.put("args", String.valueOf(ITERATIONS));
+      args.put(SparkPageRankProgram.CONVERGENCE_THRESHOLD, CONVERGENCE_THRESHOLD);
+      if (PARTITIONS != null) {
+        args.put(SparkPageRankProgram.PARTITIONS, PARTITIONS);
+      }
+      workflowManager.start(args);
+      workflowManager.waitForRuns(ProgramRunStatus.COMPLETED, runs, TIMEOUT_MINUTES, TimeUnit.MINUTES);
+
+      RunRecord sparkRun = getLatestRun(appManager.getSparkManager(PAGE_RANK_SPARK.getProgram()));
+      Map<String, String> tags = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, TEST_NAMESPACE.getNamespace(),
+                                                 Constants.Metrics.Tag.APP, APP.getApplication(),
+                                                 Constants.Metrics.Tag.SPARK, PAGE_RANK_SPARK.getProgram(),
+                                                 Constants.Metrics.Tag.RUN_ID, sparkRun.getPid());
+      // the metrics of the run may take a moment to be processed
+      checkMetricAtLeast(tags, getUserMetric(SparkPageRankProgram.ITERATIONS_METRIC), 1, 60);
+      Result result = new Result(vertices, getLatestRun(workflowManager), sparkRun,
+                                 getMetricValue(tags, getUserMetric(SparkPageRankProgram.ITERATIONS_METRIC)),
+                                 getMetricValue(tags, getUserMetric(SparkPageRankProgram.ITERATIONS_MILLIS_METRIC)),
+                                 getMetricValue(tags, getUserMetric(SparkPageRankProgram.SHUFFLE_READ_BYTES_METRIC)),
+                                 getMetricValue(tags, getUserMetric(SparkPageRankProgram.SHUFFLE_WRITE_BYTES_METRIC)));
+      LOG.info("PageRank benchmark: {}", result);
+      results.add(result);
+    }
+    writeReport(results);
+  }
+
+  private static String getUserMetric(String metric) {
+    return "user." + metric;
+  }
+
+  private static RunRecord getLatestRun(ProgramManager<?> programManager) {
+    RunRecord latest = null;
+    for (RunRecord run : programManager.getHistory(ProgramRunStatus.COMPLETED)) {
+      if (latest == null || run.getStartTs() > latest.getStartTs()) {
+        latest = run;
+      }
+    }
+    if (latest == null) {
+      throw new IllegalStateException("No completed run of " + programManager);
+    }
+    return latest;
+  }
+
+  private static void writeReport(List<Result> results) throws IOException {
+    File dir = TestPhaseTimer.getReportDir();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create directory " + dir);
+    }
+    File csvFile = new File(dir, "pagerank-benchmark.csv");
+    try (Writer writer = new FileWriter(csvFile)) {
+      writer.write("vertices,links,iterations,workflow_s,spark_s,iterations_ms,ms_per_iteration," +
+                     "shuffle_read_bytes,shuffle_write_bytes\n");
+      for (Result result : results) {
+        writer.write(Joiner.on(',').join(result.vertices, result.vertices * DEGREE, result.iterations,
+                                         result.workflowSeconds, result.sparkSeconds, result.iterationsMillis,
+                                         result.getMillisPerIteration(), result.shuffleReadBytes,
+                                         result.shuffleWriteBytes));
+        writer.write('\n');
+      }
+    }
+    LOG.info("PageRank benchmark report written to {}", csvFile);
+  }
+
+  private static List<Long> getVertices(String property, String defaultValue) {
+    List<Long> values = new ArrayList<>();
+    for (String value : Splitter.on(',').trimResults().omitEmptyStrings()
+      .split(System.getProperty(property, defaultValue))) {
+      values.add(Long.parseLong(value));
+    }
+    return values;
+  }
+
+  /**
+   * The result of the workflow for one graph.
+   */
+  private static final class Result {
+    private final long vertices;
+    // run records have a precision of seconds
+    private final long workflowSeconds;
+    private final long sparkSeconds;
+    private final long iterations;
+    private final long iterationsMillis;
+    private final long shuffleReadBytes;
+    private final long shuffleWriteBytes;
+
+    private Result(long vertices, RunRecord workflowRun, RunRecord sparkRun, long iterations, long iterationsMillis,
+                   long shuffleReadBytes, long shuffleWriteBytes) {
+      this.vertices = vertices;
+      this.workflowSeconds = workflowRun.getStopTs() - workflowRun.getStartTs();
+      this.sparkSeconds = sparkRun.getStopTs() - sparkRun.getStartTs();
+      this.iterations = iterations;
+      this.iterationsMillis = iterationsMillis;
+      this.shuffleReadBytes = shuffleReadBytes;
+      this.shuffleWriteBytes = shuffleWriteBytes;
+    }
+
+    private long getMillisPerIteration() {
+      return iterations <= 0 ? 0 : iterationsMillis / iterations;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("vertices=%d links=%d iterations=%d workflow=%ds spark=%ds ms/iteration=%d " +
+                             "shuffle read=%d bytes shuffle write=%d bytes",
+                           vertices, vertices * DEGREE, iterations, workflowSeconds, sparkSeconds,
+                           getMillisPerIteration(), shuffleReadBytes, shuffleWriteBytes);
+    }
+  }
+}
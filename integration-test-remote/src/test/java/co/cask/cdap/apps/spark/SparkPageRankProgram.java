@@ -31,21 +31,35 @@ import co.cask.cdap.api.spark.JavaSparkMain;
 import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.primitives.Ints;
+import com.google.gson.Gson;
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.Partitioner;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.util.DoubleAccumulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.Tuple2;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
@@ -56,12 +70,31 @@ public class SparkPageRankProgram implements JavaSparkMain {
 
   static final String ITERATIONS_COUNT = "iteration_count_";
   static final int ITERATIONS_COUNT_VALUE = 10;
+  // runtime arguments to stop iterating once the ranks change by less than the threshold, as the sum of the
+  // absolute changes of all ranks, and to checkpoint the ranks every number of iterations. Without a checkpoint
+  // directory, the ranks are checkpointed locally by the executors
+  static final String CONVERGENCE_THRESHOLD = "convergence.threshold";
+  static final String CHECKPOINT_INTERVAL = "checkpoint.interval";
+  static final String CHECKPOINT_DIR = "checkpoint.dir";
+  // runtime argument for the number of partitions of the links and ranks
+  static final String PARTITIONS = "partitions";
+  // metrics of the driver, to benchmark the program
+  static final String ITERATIONS_METRIC = "pagerank.iterations";
+  static final String ITERATIONS_MILLIS_METRIC = "pagerank.iterations.millis";
+  static final String SHUFFLE_READ_BYTES_METRIC = "pagerank.shuffle.read.bytes";
+  static final String SHUFFLE_WRITE_BYTES_METRIC = "pagerank.shuffle.write.bytes";
   private static final Pattern SPACES = Pattern.compile("\\s+");
   private static final String POPULAR_PAGES = "total.popular.pages";
   private static final String UNPOPULAR_PAGES = "total.unpopular.pages";
   private static final String REGULAR_PAGES = "total.regular.pages";
   private static final int POPULAR_PAGE_THRESHOLD = 10;
   private static final int UNPOPULAR_PAGE_THRESHOLD = 3;
+  // number of ranks transformed with one request to the service
+  private static final int TRANSFORM_BATCH_SIZE = 1000;
+  private static final Gson GSON = new Gson();
+
+  // the URL of the transform endpoint, which is cached by each executor
+  private static URL transformURL;
 
 
   private static class Sum implements Function2<Double, Double, Double> {
@@ -75,24 +108,49 @@ public class SparkPageRankProgram implements JavaSparkMain {
   public void run(JavaSparkExecutionContext sec) throws Exception {
     JavaSparkContext jsc = new JavaSparkContext();
 
+    ShuffleListener shuffleListener = new ShuffleListener();
+    jsc.sc().addSparkListener(shuffleListener);
+
     LOG.info("Processing backlinkURLs data");
     JavaPairRDD<byte [], byte []> backlinkURLs = sec.fromDataset(SparkPageRankApp.BACKLINK_URL_DATASET);
     int iterationCount = getIterationCount(sec);
 
+    // links and ranks are partitioned the same way, so that joining them does not shuffle the links again in
+    // every iteration. By default, there is a partition for every core of the executors
+    String partitions = sec.getRuntimeArguments().get(PARTITIONS);
+    Partitioner partitioner = new HashPartitioner(partitions == null ? jsc.defaultParallelism()
+                                                    : Integer.parseInt(partitions));
+
     LOG.info("Grouping data by key");
     // Grouping backlinks by unique URL in key
     JavaPairRDD<String, Iterable<String>> links =
       backlinkURLs.values().mapToPair(s -> {
         String[] parts = SPACES.split(Bytes.toString(s));
         return new Tuple2<>(parts[0], parts[1]);
-      }).distinct().groupByKey().cache();
+      }).distinct().groupByKey(partitioner).persist(StorageLevel.MEMORY_AND_DISK_SER());
 
-    // Initialize default rank for each key URL
+    // Initialize default rank for each key URL. mapValues keeps the partitioner of the links
     JavaPairRDD<String, Double> ranks = links.<Double>mapValues(strings -> 1.0d);
 
+    double convergenceThreshold = Double.parseDouble(
+      sec.getRuntimeArguments().getOrDefault(CONVERGENCE_THRESHOLD, "0"));
+    int checkpointInterval = Integer.parseInt(sec.getRuntimeArguments().getOrDefault(CHECKPOINT_INTERVAL, "0"));
+    String checkpointDir = sec.getRuntimeArguments().get(CHECKPOINT_DIR);
+    if (checkpointDir != null) {
+      jsc.setCheckpointDir(checkpointDir);
+    }
+    // local checkpoints are only kept by the executors, so they are replicated to survive the loss of an executor
+    StorageLevel storageLevel = checkpointInterval > 0 && checkpointDir == null
+      ? StorageLevel.MEMORY_AND_DISK_SER_2() : StorageLevel.MEMORY_AND_DISK_SER();
+    // the latest ranks that were computed by an action, which are kept until newer ranks are computed
+    JavaPairRDD<String, Double> materializedRanks = null;
+
     // Calculates and updates URL ranks continuously using PageRank algorithm.
-    for (int current = 0; current < iterationCount; current++) {
-      LOG.debug("Processing data with PageRank algorithm. Iteration {}/{}", current + 1, (iterationCount));
+    int iterations = 0;
+    long iterationsStartTime = System.currentTimeMillis();
+    while (iterations < iterationCount) {
+      iterations++;
+      LOG.debug("Processing data with PageRank algorithm. Iteration {}/{}", iterations, iterationCount);
       // Calculates URL contributions to the rank of other URLs.
       JavaPairRDD<String, Double> contribs = links.join(ranks).values()
         .<String, Double>flatMapToPair(tuple -> {
@@ -105,48 +163,79 @@ public class SparkPageRankProgram implements JavaSparkMain {
           return results.iterator();
         });
 
-      // Re-calculates URL ranks based on backlink contributions.
-      ranks = contribs.reduceByKey(new Sum()).<Double>mapValues(sum -> 0.15 + sum * 0.85);
-    }
+      // Re-calculates URL ranks based on backlink contributions, partitioned like the links
+      JavaPairRDD<String, Double> newRanks =
+        contribs.reduceByKey(partitioner, new Sum()).<Double>mapValues(sum -> 0.15 + sum * 0.85);
 
-    LOG.info("Writing ranks data");
+      // Checkpointing truncates the lineage of the ranks, which otherwise grows with every iteration
+      boolean checkpoint = checkpointInterval > 0 && iterations % checkpointInterval == 0;
+      boolean materialize = convergenceThreshold > 0 || checkpoint;
+      if (materialize) {
+        newRanks.persist(storageLevel);
+      }
+      if (checkpoint) {
+        if (checkpointDir == null) {
+          // the Java API only exposes reliable checkpoints
+          newRanks.rdd().localCheckpoint();
+        } else {
+          newRanks.checkpoint();
+        }
+      }
 
-    final ServiceDiscoverer discoveryServiceContext = sec.getServiceDiscoverer();
-    final Metrics sparkMetrics = sec.getMetrics();
-    JavaPairRDD<byte[], Integer> ranksRaw = ranks.<byte[], Integer>mapToPair(tuple -> {
-      LOG.debug("URL {} has rank {}", Arrays.toString(tuple._1().getBytes(Charsets.UTF_8)), tuple._2());
-      URL serviceURL = discoveryServiceContext.getServiceURL(SparkPageRankApp.SERVICE_HANDLERS);
-      if (serviceURL == null) {
-        throw new RuntimeException("Failed to discover service: " + SparkPageRankApp.SERVICE_HANDLERS);
+      double delta = -1;
+      if (convergenceThreshold > 0) {
+        // the L1 distance between the ranks of this iteration and of the previous one
+        DoubleAccumulator l1Delta = jsc.sc().doubleAccumulator("PageRank delta");
+        newRanks.fullOuterJoin(ranks).values()
+          .foreach(pair -> l1Delta.add(Math.abs(pair._1().orElse(0d) - pair._2().orElse(0d))));
+        delta = l1Delta.value();
+        LOG.info("PageRank iteration {} changed the ranks by {}", iterations, delta);
+      } else if (checkpoint) {
+        newRanks.count();
       }
-      try {
-        URLConnection connection = new URL(serviceURL, String.format("%s/%s",
-                                                                     SparkPageRankApp.SparkPageRankServiceHandler.
-                                                                       TRANSFORM_PATH,
-                                                                     tuple._2().toString())).openConnection();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
-                                                                              Charsets.UTF_8))) {
-          int pr = Integer.parseInt(reader.readLine());
-          if (pr == POPULAR_PAGE_THRESHOLD) {
-            sparkMetrics.count(POPULAR_PAGES, 1);
-          } else if (pr <= UNPOPULAR_PAGE_THRESHOLD) {
-            sparkMetrics.count(UNPOPULAR_PAGES, 1);
-          } else {
-            sparkMetrics.count(REGULAR_PAGES, 1);
-          }
-          return new Tuple2<>(tuple._1().getBytes(Charsets.UTF_8), pr);
+
+      if (materialize) {
+        if (materializedRanks != null) {
+          materializedRanks.unpersist(false);
         }
-      } catch (Exception e) {
-        LOG.warn("Failed to read the Stream for service {}", SparkPageRankApp.SERVICE_HANDLERS, e);
-        throw Throwables.propagate(e);
+        materializedRanks = newRanks;
+      }
+      ranks = newRanks;
+      if (delta >= 0 && delta < convergenceThreshold) {
+        LOG.info("PageRank converged after {} of at most {} iterations", iterations, iterationCount);
+        break;
       }
-    });
+    }
+
+    // this only includes computing the ranks if every iteration is materialized by the convergence check. Otherwise,
+    // the ranks are mostly computed while they are written
+    long iterationsMillis = System.currentTimeMillis() - iterationsStartTime;
+
+    LOG.info("Writing ranks data");
+
+    final ServiceDiscoverer discoveryServiceContext = sec.getServiceDiscoverer();
+    // transform the ranks of each partition in batches, with one request to the service per batch. The transformed
+    // ranks are kept, so that counting the pages does not transform them again
+    JavaPairRDD<byte[], Integer> ranksRaw = ranks.<byte[], Integer>mapPartitionsToPair(partition -> Iterators.concat(
+      Iterators.transform(Iterators.partition(partition, TRANSFORM_BATCH_SIZE),
+                          batch -> transformRanks(discoveryServiceContext, batch).iterator())))
+      .persist(StorageLevel.MEMORY_AND_DISK_SER());
 
     // Store calculated results in output Dataset.
     // All calculated results are stored in one row.
     // Each result, the calculated URL rank based on backlink contributions, is an entry of the row.
     // The value of the entry is the URL rank.
     sec.saveAsDataset(ranksRaw, "ranks");
+    // the pages are counted by an action rather than with accumulators in the transformation, which would count
+    // the pages of retried tasks more than once
+    Map<String, Long> pages = ranksRaw.values().map(SparkPageRankProgram::getPageClass).countByValue();
+    for (Map.Entry<String, Long> entry : pages.entrySet()) {
+      sec.getMetrics().count(entry.getKey(), Ints.checkedCast(entry.getValue()));
+    }
+    ranksRaw.unpersist(false);
+    sec.getMetrics().gauge(ITERATIONS_METRIC, iterations);
+    sec.getMetrics().gauge(ITERATIONS_MILLIS_METRIC, iterationsMillis);
+    shuffleListener.emit(sec.getMetrics());
 
     // ideally this should be stored as a key-value property but currently UI does not support displaying properties so
     // add it as tag
@@ -166,11 +255,108 @@ public class SparkPageRankProgram implements JavaSparkMain {
       }
     }
     // write the new tag
-    sec.addTags(MetadataEntity.ofDataset(sec.getNamespace(), "ranks"), ITERATIONS_COUNT + iterationCount);
+    sec.addTags(MetadataEntity.ofDataset(sec.getNamespace(), "ranks"), ITERATIONS_COUNT + iterations);
 
     LOG.info("PageRanks successfuly computed and written to \"ranks\" dataset");
   }
 
+  // transforms a batch of ranks with the service
+  private static List<Tuple2<byte[], Integer>> transformRanks(ServiceDiscoverer discoverer,
+                                                              List<Tuple2<String, Double>> batch) {
+    double[] pageRanks = new double[batch.size()];
+    for (int i = 0; i < pageRanks.length; i++) {
+      pageRanks[i] = batch.get(i)._2();
+    }
+    int[] transformed;
+    try {
+      try {
+        transformed = transform(getTransformURL(discoverer, false), pageRanks);
+      } catch (IOException e) {
+        // the service may have moved since its URL was cached
+        LOG.debug("Failed to transform ranks, discovering service {} again", SparkPageRankApp.SERVICE_HANDLERS, e);
+        transformed = transform(getTransformURL(discoverer, true), pageRanks);
+      }
+    } catch (Exception e) {
+      LOG.warn("Failed to transform ranks with service {}", SparkPageRankApp.SERVICE_HANDLERS, e);
+      throw Throwables.propagate(e);
+    }
+
+    List<Tuple2<byte[], Integer>> results = new ArrayList<>(batch.size());
+    for (int i = 0; i < transformed.length; i++) {
+      results.add(new Tuple2<>(batch.get(i)._1().getBytes(Charsets.UTF_8), transformed[i]));
+    }
+    return results;
+  }
+
+  // the metric that counts the pages with the given transformed rank
+  private static String getPageClass(int pr) {
+    if (pr == POPULAR_PAGE_THRESHOLD) {
+      return POPULAR_PAGES;
+    }
+    return pr <= UNPOPULAR_PAGE_THRESHOLD ? UNPOPULAR_PAGES : REGULAR_PAGES;
+  }
+
+  // the URL of the service is discovered once per executor, unless it has to be discovered again
+  private static synchronized URL getTransformURL(ServiceDiscoverer discoverer, boolean rediscover) throws IOException {
+    if (transformURL == null || rediscover) {
+      URL serviceURL = discoverer.getServiceURL(SparkPageRankApp.SERVICE_HANDLERS);
+      if (serviceURL == null) {
+        throw new IOException("Failed to discover service: " + SparkPageRankApp.SERVICE_HANDLERS);
+      }
+      transformURL = new URL(serviceURL, SparkPageRankApp.SparkPageRankServiceHandler.TRANSFORM_PATH);
+    }
+    return transformURL;
+  }
+
+  private static int[] transform(URL url, double[] pageRanks) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setDoOutput(true);
+      try (Writer writer = new OutputStreamWriter(connection.getOutputStream(), Charsets.UTF_8)) {
+        GSON.toJson(pageRanks, writer);
+      }
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        throw new IOException(String.format("Failed to transform %d ranks with %s: %d %s", pageRanks.length, url,
+                                            connection.getResponseCode(), connection.getResponseMessage()));
+      }
+      int[] transformed;
+      try (Reader reader = new InputStreamReader(connection.getInputStream(), Charsets.UTF_8)) {
+        transformed = GSON.fromJson(reader, int[].class);
+      }
+      if (transformed == null || transformed.length != pageRanks.length) {
+        throw new IOException(String.format("Expected %d transformed ranks from %s", pageRanks.length, url));
+      }
+      return transformed;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Sums the bytes that the tasks of the program read and wrote while shuffling.
+   */
+  private static final class ShuffleListener extends SparkListener {
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong writeBytes = new AtomicLong();
+
+    @Override
+    public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+      TaskMetrics taskMetrics = taskEnd.taskMetrics();
+      // failed tasks may have no metrics
+      if (taskMetrics != null) {
+        readBytes.addAndGet(taskMetrics.shuffleReadMetrics().totalBytesRead());
+        writeBytes.addAndGet(taskMetrics.shuffleWriteMetrics().bytesWritten());
+      }
+    }
+
+    private void emit(Metrics metrics) {
+      metrics.gauge(SHUFFLE_READ_BYTES_METRIC, readBytes.get());
+      metrics.gauge(SHUFFLE_WRITE_BYTES_METRIC, writeBytes.get());
+    }
+  }
+
   private int getIterationCount(JavaSparkExecutionContext sec) {
     String args = sec.getRuntimeArguments().get("args");
     if (args == null) {
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.test.runner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link TestShards}.
+ */
+public class TestShardsTest {
+
+  private static final List<String> CLASS_NAMES = createClassNames(40);
+
+  @Test
+  public void testSingleShard() {
+    List<String> classNames = ImmutableList.of("c.CTest", "a.ATest", "b.BTest", "a.ATest");
+    List<String> expected = ImmutableList.of("a.ATest", "b.BTest", "c.CTest");
+    Assert.assertEquals(expected, TestShards.select(classNames, 0, 1, Collections.emptyMap()));
+    Assert.assertEquals(expected, TestShards.select(classNames, 0, 1, ImmutableMap.of("b.BTest", 10L)));
+  }
+
+  @Test
+  public void testSplitByName() {
+    for (int shardCount = 1; shardCount <= 7; shardCount++) {
+      List<List<String>> shards = selectAll(CLASS_NAMES, shardCount, Collections.emptyMap());
+      assertPartition(CLASS_NAMES, shards);
+      for (int i = 0; i < shardCount; i++) {
+        for (String className : shards.get(i)) {
+          Assert.assertEquals(Math.floorMod(className.hashCode(), shardCount), i);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSplitByDuration() {
+    Map<String, Long> history = ImmutableMap.of("ATest", 100L, "BTest", 60L, "CTest", 50L, "DTest", 40L, "ETest", 10L);
+    List<String> classNames = ImmutableList.of("ETest", "DTest", "CTest", "BTest", "ATest");
+
+    // longest first, each to the least loaded shard: A -> 0, B -> 1, C -> 1, D -> 0, E -> 1
+    List<List<String>> shards = selectAll(classNames, 2, history);
+    Assert.assertEquals(ImmutableList.of("ATest", "DTest"), shards.get(0));
+    Assert.assertEquals(ImmutableList.of("BTest", "CTest", "ETest"), shards.get(1));
+  }
+
+  @Test
+  public void testClassesWithoutHistory() {
+    // FTest and GTest have no history, so they count as the average of 60 ms
+    Map<String, Long> history = ImmutableMap.of("ATest", 100L, "BTest", 50L, "CTest", 30L);
+    List<String> classNames = ImmutableList.of("ATest", "BTest", "CTest", "FTest", "GTest");
+
+    // A -> 0, F -> 1, G -> 2, B -> 1, C -> 2
+    List<List<String>> shards = selectAll(classNames, 3, history);
+    Assert.assertEquals(ImmutableList.of("ATest"), shards.get(0));
+    Assert.assertEquals(ImmutableList.of("BTest", "FTest"), shards.get(1));
+    Assert.assertEquals(ImmutableList.of("CTest", "GTest"), shards.get(2));
+  }
+
+  @Test
+  public void testEveryClassInOneShard() {
+    Random random = new Random(0L);
+    Map<String, Long> history = new HashMap<>();
+    for (String className : CLASS_NAMES) {
+      // leave some classes without history, and give some of them the same duration
+      if (random.nextInt(4) != 0) {
+        history.put(className, (long) random.nextInt(10) * 1000);
+      }
+    }
+    for (int shardCount = 1; shardCount <= 7; shardCount++) {
+      List<List<String>> shards = selectAll(CLASS_NAMES, shardCount, history);
+      assertPartition(CLASS_NAMES, shards);
+
+      // the longest class is at most the difference between the most and the least loaded shards
+      long maxDuration = Collections.max(history.values());
+      long minLoad = Long.MAX_VALUE;
+      long maxLoad = 0;
+      for (List<String> shard : shards) {
+        long load = 0;
+        for (String className : shard) {
+          load += history.containsKey(className) ? history.get(className) : getAverage(history);
+        }
+        minLoad = Math.min(minLoad, load);
+        maxLoad = Math.max(maxLoad, load);
+      }
+      Assert.assertTrue(maxLoad - minLoad <= maxDuration);
+    }
+  }
+
+  @Test
+  public void testInputOrderDoesNotMatter() {
+    Map<String, Long> history = ImmutableMap.of(CLASS_NAMES.get(0), 5000L, CLASS_NAMES.get(1), 200L);
+    List<String> shuffled = new ArrayList<>(CLASS_NAMES);
+    Collections.shuffle(shuffled, new Random(0L));
+    for (Map<String, Long> classHistory : ImmutableList.<Map<String, Long>>of(Collections.emptyMap(), history)) {
+      Assert.assertEquals(selectAll(CLASS_NAMES, 3, classHistory), selectAll(shuffled, 3, classHistory));
+    }
+  }
+
+  private static List<List<String>> selectAll(List<String> classNames, int shardCount, Map<String, Long> history) {
+    List<List<String>> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(TestShards.select(classNames, i, shardCount, history));
+    }
+    return shards;
+  }
+
+  // asserts that every class is in exactly one of the shards, and that each shard is sorted
+  private static void assertPartition(List<String> classNames, List<List<String>> shards) {
+    List<String> all = new ArrayList<>();
+    for (List<String> shard : shards) {
+      List<String> sorted = new ArrayList<>(shard);
+      Collections.sort(sorted);
+      Assert.assertEquals(sorted, shard);
+      all.addAll(shard);
+    }
+    List<String> expected = new ArrayList<>(classNames);
+    Collections.sort(expected);
+    Collections.sort(all);
+    Assert.assertEquals(expected, all);
+  }
+
+  private static long getAverage(Map<String, Long> history) {
+    long total = 0;
+    for (long duration : history.values()) {
+      total += duration;
+    }
+    return total / history.size();
+  }
+
+  private static List<String> createClassNames(int count) {
+    List<String> classNames = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      classNames.add(String.format("co.cask.cdap.test%d.Sample%dTest", i % 3, i));
+    }
+    return classNames;
+  }
+}
@@ -48,14 +48,16 @@ import co.cask.cdap.operations.OperationalStatsTest;
 import co.cask.cdap.remote.dataset.test.RemoteCubeTest;
 import co.cask.cdap.remote.dataset.test.RemoteKeyValueTest;
 import co.cask.cdap.remote.dataset.test.RemoteTableTest;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Suite to represent all integration tests for CDAP.
+ * Uses {@link AutoSuiteRunner} so that the suite can be split into shards with {@code -Dshard.index} and
+ * {@code -Dshard.count}.
  */
-@RunWith(Suite.class)
-@Suite.SuiteClasses({
+@RunWith(AutoSuiteRunner.class)
+@AutoSuiteRunner.Matches(classes = {
 //
 // Note: all the class names below are in sorted order
 //
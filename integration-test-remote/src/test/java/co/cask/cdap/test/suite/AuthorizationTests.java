@@ -16,14 +16,14 @@
 
 package co.cask.cdap.test.suite;
 
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Suite to represent all authorization integration tests for CDAP.
  */
-@RunWith(Suite.class)
-@Suite.SuiteClasses({
+@RunWith(AutoSuiteRunner.class)
+@AutoSuiteRunner.Matches(classes = {
   // Note: all the class names below are in sorted order
 })
 public class AuthorizationTests {
@@ -16,18 +16,16 @@
 
 package co.cask.cdap.test.suite;
 
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import co.cask.cdap.test.suite.category.CDH55Incompatible;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Junit suite for tests that should run on CDH5.5.
  */
-@RunWith(Categories.class)
+@RunWith(AutoSuiteRunner.class)
 @Categories.ExcludeCategory(CDH55Incompatible.class)
-@Suite.SuiteClasses({
-  AllTests.class
-})
+@AutoSuiteRunner.Matches(classes = AllTests.class)
 public class CDH55Suite {
 }
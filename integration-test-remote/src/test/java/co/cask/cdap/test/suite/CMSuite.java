@@ -16,16 +16,13 @@
 
 package co.cask.cdap.test.suite;
 
-import org.junit.experimental.categories.Categories;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Junit suite for tests that should run on Cloudera Manager.
  */
-@RunWith(Categories.class)
-@Suite.SuiteClasses({
-  AllTests.class
-})
+@RunWith(AutoSuiteRunner.class)
+@AutoSuiteRunner.Matches(classes = AllTests.class)
 public class CMSuite {
 }
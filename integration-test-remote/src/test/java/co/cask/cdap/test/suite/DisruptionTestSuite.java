@@ -16,15 +16,14 @@
 
 package co.cask.cdap.test.suite;
 
-import org.junit.experimental.categories.Categories;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Suite to represent all integration tests that uses {@link co.cask.cdap.test.DisruptorFactory}
  */
-@RunWith(Categories.class)
-@Suite.SuiteClasses({
+@RunWith(AutoSuiteRunner.class)
+@AutoSuiteRunner.Matches(classes = {
   // TODO(CDAP-14746): Bring back ContinuousCounterTest?
 })
 public class DisruptionTestSuite {
@@ -16,18 +16,16 @@
 
 package co.cask.cdap.test.suite;
 
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import co.cask.cdap.test.suite.category.EMRIncompatible;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Junit suite for tests that should run on EMR.
  */
-@RunWith(Categories.class)
+@RunWith(AutoSuiteRunner.class)
 @Categories.ExcludeCategory(EMRIncompatible.class)
-@Suite.SuiteClasses({
-  AllTests.class
-})
+@AutoSuiteRunner.Matches(classes = AllTests.class)
 public class EMRSuite {
 }
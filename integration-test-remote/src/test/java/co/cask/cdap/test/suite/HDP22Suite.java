@@ -16,18 +16,16 @@
 
 package co.cask.cdap.test.suite;
 
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import co.cask.cdap.test.suite.category.HDP22Incompatible;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Junit suite for tests that should run on HDP2.2.
  */
-@RunWith(Categories.class)
+@RunWith(AutoSuiteRunner.class)
 @Categories.ExcludeCategory(HDP22Incompatible.class)
-@Suite.SuiteClasses({
-  AllTests.class
-})
+@AutoSuiteRunner.Matches(classes = AllTests.class)
 public class HDP22Suite {
 }
@@ -17,15 +17,18 @@
 package co.cask.cdap.test.suite;
 
 import co.cask.cdap.security.AppImpersonationTest;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
+import co.cask.cdap.test.suite.category.CDH55Incompatible;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * JUnit suite for impersonation tests. Runs all of the tests in {@link AllTests} and impersonation-specific tests.
  */
-@RunWith(Categories.class)
-@Suite.SuiteClasses({
+@RunWith(AutoSuiteRunner.class)
+// CDH55Suite is expanded into the tests it matches, which are only filtered by the categories excluded here
+@Categories.ExcludeCategory(CDH55Incompatible.class)
+@AutoSuiteRunner.Matches(classes = {
   // TODO: Currently impersonation integration test runs on CDH5.5 clusters only. Once we support running on different
   // distros, this should be AllTests.class
   CDH55Suite.class,
@@ -16,20 +16,18 @@
 
 package co.cask.cdap.test.suite;
 
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import co.cask.cdap.test.suite.category.MapR5Incompatible;
 import co.cask.cdap.test.suite.category.RequiresSpark;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Junit suite for tests that should run on MapR 5.x.
  */
-@RunWith(Categories.class)
+@RunWith(AutoSuiteRunner.class)
 // coopr doesn't provision MapR cluster with Spark. Remove exclusion of "RequiresSpark" once COOK-108 is fixed
 @Categories.ExcludeCategory({MapR5Incompatible.class, RequiresSpark.class})
-@Suite.SuiteClasses({
-  AllTests.class
-})
+@AutoSuiteRunner.Matches(classes = AllTests.class)
 public class MapR5Suite {
 }
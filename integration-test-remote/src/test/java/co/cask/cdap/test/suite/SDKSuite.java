@@ -17,17 +17,17 @@
 package co.cask.cdap.test.suite;
 
 import co.cask.cdap.app.etl.preview.PreviewDataPipelineTest;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import co.cask.cdap.test.suite.category.SDKIncompatible;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Junit suite for tests that should run on the CDAP SDK.
  */
-@RunWith(Categories.class)
+@RunWith(AutoSuiteRunner.class)
 @Categories.ExcludeCategory(SDKIncompatible.class)
-@Suite.SuiteClasses({
+@AutoSuiteRunner.Matches(classes = {
   AllTests.class,
   PreviewDataPipelineTest.class
 })
@@ -16,15 +16,14 @@
 
 package co.cask.cdap.test.suite;
 
-import org.junit.experimental.categories.Categories;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * JUnit suite for authorization tests. Runs all of the tests specific to authorization.
  */
-@RunWith(Categories.class)
-@Suite.SuiteClasses({
+@RunWith(AutoSuiteRunner.class)
+@AutoSuiteRunner.Matches(classes = {
   AuthorizationTests.class,
 })
 public class SentryAuthorizationSuite {
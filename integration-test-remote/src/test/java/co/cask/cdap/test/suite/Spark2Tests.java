@@ -17,15 +17,14 @@
 package co.cask.cdap.test.suite;
 
 import co.cask.cdap.apps.spark.SparkPageRankAppTest;
-import org.junit.experimental.categories.Categories;
+import co.cask.cdap.test.runner.AutoSuiteRunner;
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 
 /**
  * Suite to represent all integration tests that require Spark2.
  */
-@RunWith(Categories.class)
-@Suite.SuiteClasses({
+@RunWith(AutoSuiteRunner.class)
+@AutoSuiteRunner.Matches(classes = {
   SparkPageRankAppTest.class
 })
 public class Spark2Tests {
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+
+/**
+ * Encodes sequences of longs, such as transaction ids, into compact strings, for large states of long running tests.
+ * Each value is written as the difference to the previous one, zigzag encoded so that negative differences stay small,
+ * in a variable length encoding that takes one byte for every seven bits. The bytes are encoded in Base64, without
+ * padding. Values that are close to their predecessor take a few bytes each, instead of up to twenty characters as
+ * JSON numbers. The order of the values, including duplicates, is kept.
+ */
+public final class DeltaEncodedLongs {
+
+  private DeltaEncodedLongs() { }
+
+  /**
+   * @param values the values to encode, which are not modified
+   * @return the values as a string
+   */
+  public static String encode(long[] values) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(values.length * 2 + 1);
+    writeVarLong(bytes, values.length);
+    long previous = 0;
+    for (long value : values) {
+      // the difference can overflow, but it is undone by the same overflow when decoding
+      long delta = value - previous;
+      writeVarLong(bytes, (delta << 1) ^ (delta >> 63));
+      previous = value;
+    }
+    return Base64.getEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * @param encoded a string returned by {@link #encode(long[])}
+   * @return the values, in the order they were encoded
+   */
+  public static long[] decode(String encoded) {
+    byte[] bytes = Base64.getDecoder().decode(encoded);
+    int[] position = new int[1];
+    long count = readVarLong(bytes, position);
+    // every value takes at least one byte
+    if (count < 0 || count > bytes.length - position[0]) {
+      throw new IllegalArgumentException("Invalid number of longs " + count);
+    }
+    long[] values = new long[(int) count];
+    long previous = 0;
+    for (int i = 0; i < values.length; i++) {
+      long delta = readVarLong(bytes, position);
+      values[i] = previous + ((delta >>> 1) ^ -(delta & 1));
+      previous = values[i];
+    }
+    if (position[0] != bytes.length) {
+      throw new IllegalArgumentException("Unexpected bytes after the encoded longs");
+    }
+    return values;
+  }
+
+  // writes the value as unsigned, seven bits per byte, with the high bit set on all bytes but the last
+  private static void writeVarLong(ByteArrayOutputStream bytes, long value) {
+    while ((value & ~0x7FL) != 0) {
+      bytes.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    bytes.write((int) value);
+  }
+
+  private static long readVarLong(byte[] bytes, int[] position) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (position[0] >= bytes.length) {
+        throw new IllegalArgumentException("Truncated encoding of longs");
+      }
+      if (shift > 63) {
+        throw new IllegalArgumentException("Encoded long is longer than 64 bits");
+      }
+      b = bytes[position[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
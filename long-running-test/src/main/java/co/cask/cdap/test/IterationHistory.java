@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ring buffer with the timings of the most recent iterations of a long running test. It is saved along with
+ * the state of the test, so that the timings of iterations from previous runs can be compared to the current one.
+ */
+public final class IterationHistory {
+  private final Record[] records;
+  // index in the records array where the next record is written
+  private int next;
+  private int size;
+
+  public IterationHistory(int capacity) {
+    this.records = new Record[capacity];
+  }
+
+  /**
+   * Returns a copy of this history with the given capacity, keeping the most recent records that fit.
+   */
+  public IterationHistory withCapacity(int capacity) {
+    IterationHistory history = new IterationHistory(capacity);
+    for (Record record : getRecords()) {
+      history.add(record);
+    }
+    return history;
+  }
+
+  public int getCapacity() {
+    return records.length;
+  }
+
+  /**
+   * Adds a record, replacing the oldest record if the history is full.
+   */
+  public void add(Record record) {
+    records[next] = record;
+    next = (next + 1) % records.length;
+    size = Math.min(size + 1, records.length);
+  }
+
+  /**
+   * @return the records, from the oldest to the most recent
+   */
+  public List<Record> getRecords() {
+    List<Record> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(records[(next - size + i + records.length) % records.length]);
+    }
+    return result;
+  }
+
+  /**
+   * @return the most recent record, or {@code null} if there is none
+   */
+  public Record getLatest() {
+    return size == 0 ? null : records[(next - 1 + records.length) % records.length];
+  }
+
+  /**
+   * @return the durations in milliseconds of the given metric, in the records that have it
+   */
+  public List<Long> getDurations(String metric) {
+    List<Long> durations = new ArrayList<>();
+    for (Record record : getRecords()) {
+      Long duration = record.getDurations().get(metric);
+      if (duration != null) {
+        durations.add(duration);
+      }
+    }
+    return durations;
+  }
+
+  /**
+   * The timings of one iteration. Durations are keyed by the name of the step of the iteration, or by the name of
+   * a program that ran during the iteration.
+   */
+  public static final class Record {
+    private final long startTime;
+    private final long endTime;
+    private final Map<String, Long> durations;
+
+    public Record(long startTime, long endTime, Map<String, Long> durations) {
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.durations = new LinkedHashMap<>(durations);
+    }
+
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public long getEndTime() {
+      return endTime;
+    }
+
+    public Map<String, Long> getDurations() {
+      return Collections.unmodifiableMap(durations);
+    }
+
+    @Override
+    public String toString() {
+      return "Record{" +
+        "startTime=" + startTime +
+        ", endTime=" + endTime +
+        ", durations=" + durations +
+        '}';
+    }
+  }
+}
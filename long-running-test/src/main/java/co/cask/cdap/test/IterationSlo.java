@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * An objective for a percentile of the durations of a step or a program of the iterations of a long running test,
+ * such as {@code DataCleansingMapReduce:p95<180}, meaning that 95% of the runs of the program in recent iterations
+ * must take less than 180 seconds.
+ */
+public final class IterationSlo {
+  private static final Pattern SPEC = Pattern.compile("(.+):p(\\d+(?:\\.\\d+)?)<(\\d+)");
+
+  private final String metric;
+  private final double percentile;
+  private final long maxSeconds;
+
+  public IterationSlo(String metric, double percentile, long maxSeconds) {
+    if (percentile <= 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be in (0, 100], got " + percentile);
+    }
+    this.metric = metric;
+    this.percentile = percentile;
+    this.maxSeconds = maxSeconds;
+  }
+
+  /**
+   * Parses a comma separated list of objectives, each of the form {@code <metric>:p<percentile><<seconds>}.
+   */
+  public static List<IterationSlo> parse(@Nullable String specs) {
+    List<IterationSlo> slos = new ArrayList<>();
+    if (specs == null || specs.trim().isEmpty()) {
+      return slos;
+    }
+    for (String spec : specs.split(",")) {
+      Matcher matcher = SPEC.matcher(spec.trim());
+      if (!matcher.matches()) {
+        throw new IllegalArgumentException(
+          String.format("Invalid objective '%s'. Expected <metric>:p<percentile><<seconds>", spec));
+      }
+      slos.add(new IterationSlo(matcher.group(1), Double.parseDouble(matcher.group(2)),
+                                Long.parseLong(matcher.group(3))));
+    }
+    return slos;
+  }
+
+  /**
+   * Checks this objective against the durations in the given history.
+   *
+   * @param minSamples the number of durations needed to check the objective, to avoid failing on a few outliers
+   * @return a description of the violation, or {@code null} if the objective is met or there are too few durations
+   */
+  @Nullable
+  public String check(IterationHistory history, int minSamples) {
+    List<Long> durations = history.getDurations(metric);
+    if (durations.isEmpty() || durations.size() < minSamples) {
+      return null;
+    }
+    Collections.sort(durations);
+    // nearest rank percentile
+    int rank = (int) Math.ceil(percentile / 100 * durations.size());
+    long value = durations.get(Math.max(rank, 1) - 1);
+    if (value < TimeUnit.SECONDS.toMillis(maxSeconds)) {
+      return null;
+    }
+    return String.format("p%s of %s is %d ms over the last %d iterations, expected less than %d s",
+                         percentile, metric, value, durations.size(), maxSeconds);
+  }
+
+  @Override
+  public String toString() {
+    return metric + ":p" + percentile + "<" + maxSeconds;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
+
+/**
+ * {@link TestStateCodec} that saves states as JSON. This is used unless a test provides its own codec.
+ *
+ * @param <T> Type of test state
+ */
+public class JsonTestStateCodec<T extends TestState> implements TestStateCodec<T> {
+  private static final Gson GSON = new Gson();
+
+  private final Type stateType;
+
+  public JsonTestStateCodec(Type stateType) {
+    this.stateType = stateType;
+  }
+
+  @Override
+  public String encode(T state) {
+    return GSON.toJson(state);
+  }
+
+  @Override
+  public T decode(String encoded) {
+    return GSON.fromJson(encoded, stateType);
+  }
+}
@@ -17,7 +17,10 @@
 package co.cask.cdap.test;
 
 import co.cask.cdap.proto.NamespaceMeta;
+import co.cask.cdap.proto.ProgramRunStatus;
+import co.cask.cdap.proto.RunRecord;
 import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.ProgramId;
 import com.google.gson.Gson;
 import org.junit.After;
 import org.junit.Before;
@@ -25,9 +28,17 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Abstract class for writing long running tests for CDAP.
@@ -38,24 +49,47 @@ public abstract class LongRunningTestBase<T extends TestState> extends AudiTestB
   public static final Logger LOG = LoggerFactory.getLogger(LongRunningTestBase.class);
   // key is Test class name and value is test state in json format
   private static Map<String, String> inMemoryStatePerTest;
-  private static final Gson GSON = new Gson();
+  private static StateJournal stateJournal;
 
   private static final String STAGE = System.getProperty("stage");
+  // soak mode runs iterations in a loop, until either limit is reached, at most at the given rate
+  private static final int SOAK_ITERATIONS = Integer.getInteger("longrunning.soak.iterations", 0);
+  private static final long SOAK_DURATION_MINUTES = Long.getLong("longrunning.soak.duration.minutes", 0L);
+  private static final double SOAK_ITERATIONS_PER_HOUR =
+    Double.parseDouble(System.getProperty("longrunning.soak.iterations.per.hour", "0"));
+  // timings of the most recent iterations are kept, and checked against the objectives once there are enough of them
+  private static final int SLO_HISTORY = Integer.getInteger("longrunning.slo.history", 50);
+  private static final int SLO_MIN_SAMPLES = Integer.getInteger("longrunning.slo.min.samples", 5);
+  private static final List<IterationSlo> SLOS = IterationSlo.parse(System.getProperty("longrunning.slo"));
+  private static final String ITERATIONS_KEY_SUFFIX = "#iterations";
+  private static final Gson GSON = new Gson();
   private static final String PRE = "PRE";
   private static final String POST = "POST";
 
   private NamespaceId longRunningNamespace;
+  private TestStateCodec<T> stateCodec;
   private T state;
+  private IterationHistory iterationHistory;
 
   public static void initializeInMemoryMap(Map<String, String> inMemoryMap) {
     inMemoryStatePerTest = inMemoryMap;
   }
 
+  /**
+   * Sets the journal that the state of each test is appended to whenever it changes.
+   */
+  public static void initializeStateJournal(@Nullable StateJournal journal) {
+    stateJournal = journal;
+  }
+
   private NamespaceId configureLongRunningNamespace(String namespace) throws Exception {
     NamespaceId namespaceId = new NamespaceId(namespace);
-    if (!getNamespaceClient().exists(namespaceId)) {
-      NamespaceMeta namespaceMeta = new NamespaceMeta.Builder().setName(namespaceId).build();
-      getNamespaceClient().create(namespaceMeta);
+    // tests running concurrently may share the namespace
+    synchronized (LongRunningTestBase.class) {
+      if (!getNamespaceClient().exists(namespaceId)) {
+        NamespaceMeta namespaceMeta = new NamespaceMeta.Builder().setName(namespaceId).build();
+        getNamespaceClient().create(namespaceMeta);
+      }
     }
     return namespaceId;
   }
@@ -72,22 +106,27 @@ public abstract class LongRunningTestBase<T extends TestState> extends AudiTestB
   @Override
   public void setUp() throws Exception {
     checkSystemServices();
-    longRunningNamespace =
-      configureLongRunningNamespace(System.getProperty("long.running.namespace", TEST_NAMESPACE.getNamespace()));
+    String namespace = System.getProperty("long.running.namespace", TEST_NAMESPACE.getNamespace());
+    if (Boolean.getBoolean("long.running.namespace.per.test")) {
+      // tests that run concurrently don't share a namespace
+      namespace = namespace + "_" + getClass().getSimpleName();
+    }
+    longRunningNamespace = configureLongRunningNamespace(namespace);
 
     boolean firstRun = false;
-    Type stateType = ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+    stateCodec = getStateCodec();
     String key = getTestName();
     if (inMemoryStatePerTest.containsKey(key)) {
-      state = GSON.fromJson(inMemoryStatePerTest.get(key), stateType);
+      state = stateCodec.decode(inMemoryStatePerTest.get(key));
     } else {
       LOG.warn("Input state not found, treating this as the first run");
       firstRun = true;
       state = getInitialState();
-      inMemoryStatePerTest.put(key, GSON.toJson(state));
+      saveState();
     }
 
     LOG.info("Got input state = {}", state);
+    iterationHistory = loadIterationHistory();
 
     if (firstRun) {
       LOG.info("Executing first run of long running test {}...", getTestName());
@@ -99,7 +138,55 @@ public abstract class LongRunningTestBase<T extends TestState> extends AudiTestB
   @After
   @Override
   public void tearDown() throws Exception {
-    inMemoryStatePerTest.put(getTestName(), GSON.toJson(state));
+    saveState();
+  }
+
+  /**
+   * Returns the codec used to save the state of the test. By default, the state is saved as JSON.
+   * Tests with large states can override this to save them in a more compact way.
+   */
+  protected TestStateCodec<T> getStateCodec() {
+    Type stateType = ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+    return new JsonTestStateCodec<>(stateType);
+  }
+
+  /**
+   * Returns the programs whose run durations are recorded for every iteration, and can be given objectives with
+   * {@code -Dlongrunning.slo}. By default, no programs are monitored.
+   */
+  protected Collection<ProgramId> getMonitoredPrograms() {
+    return Collections.emptyList();
+  }
+
+  // puts the state in the in-memory map, and appends it to the state journal if it changed
+  private void saveState() throws IOException {
+    if (state == null) {
+      // setUp failed before the state was loaded
+      return;
+    }
+    String json = stateCodec.encode(state);
+    String previous = inMemoryStatePerTest.put(getTestName(), json);
+    if (stateJournal != null && !json.equals(previous)) {
+      stateJournal.append(getTestName(), json, inMemoryStatePerTest);
+    }
+  }
+
+  private IterationHistory loadIterationHistory() {
+    String json = inMemoryStatePerTest.get(getTestName() + ITERATIONS_KEY_SUFFIX);
+    if (json == null) {
+      return new IterationHistory(SLO_HISTORY);
+    }
+    IterationHistory history = GSON.fromJson(json, IterationHistory.class);
+    return history.getCapacity() == SLO_HISTORY ? history : history.withCapacity(SLO_HISTORY);
+  }
+
+  private void saveIterationHistory() throws IOException {
+    String key = getTestName() + ITERATIONS_KEY_SUFFIX;
+    String json = GSON.toJson(iterationHistory);
+    inMemoryStatePerTest.put(key, json);
+    if (stateJournal != null) {
+      stateJournal.append(key, json, inMemoryStatePerTest);
+    }
   }
 
   private String getTestName() {
@@ -110,6 +197,8 @@ public abstract class LongRunningTestBase<T extends TestState> extends AudiTestB
   public void test() throws Exception {
     if (Boolean.getBoolean("longrunning.as.upgrade")) {
       testUpgrade();
+    } else if (SOAK_ITERATIONS > 0 || SOAK_DURATION_MINUTES > 0) {
+      testSoak();
     } else {
       testLongRunning();
     }
@@ -120,6 +209,40 @@ public abstract class LongRunningTestBase<T extends TestState> extends AudiTestB
     runOneIteration();
   }
 
+  /**
+   * Runs iterations in a loop, to put sustained load on the cluster from a single JVM. The state is saved after
+   * every iteration, so that the progress is kept if the loop is interrupted.
+   */
+  private void testSoak() throws Exception {
+    long startTime = System.currentTimeMillis();
+    long endTime = SOAK_DURATION_MINUTES > 0 ? startTime + TimeUnit.MINUTES.toMillis(SOAK_DURATION_MINUTES)
+      : Long.MAX_VALUE;
+    long intervalMillis = SOAK_ITERATIONS_PER_HOUR > 0 ? (long) (TimeUnit.HOURS.toMillis(1) / SOAK_ITERATIONS_PER_HOUR)
+      : 0;
+    LOG.info("Soaking long running test {} for {} iterations, {} minutes, at {} iterations per hour",
+             getTestName(), SOAK_ITERATIONS, SOAK_DURATION_MINUTES, SOAK_ITERATIONS_PER_HOUR);
+
+    int iterations = 0;
+    long nextIterationTime = startTime;
+    while (SOAK_ITERATIONS <= 0 || iterations < SOAK_ITERATIONS) {
+      long now = System.currentTimeMillis();
+      if (nextIterationTime > now) {
+        TimeUnit.MILLISECONDS.sleep(Math.min(nextIterationTime, endTime) - now);
+        now = System.currentTimeMillis();
+      }
+      if (now >= endTime) {
+        break;
+      }
+      // if an iteration took longer than the interval, start the next one right away rather than catching up
+      nextIterationTime = Math.max(nextIterationTime, now) + intervalMillis;
+
+      runOneIteration();
+      iterations++;
+      LOG.info("Completed {} iterations of long running test {} in {} seconds", iterations, getTestName(),
+               TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startTime));
+    }
+  }
+
   private void testUpgrade() throws Exception {
     LOG.info("Testing stage {} of Upgrade: {}.", STAGE, getTestName());
     if (POST.equalsIgnoreCase(STAGE)) {
@@ -154,15 +277,63 @@ public abstract class LongRunningTestBase<T extends TestState> extends AudiTestB
 
   private void runOneIteration() throws Exception {
     LOG.info("Running one iteration of test run {}", getTestName());
+    long startTime = System.currentTimeMillis();
+    Map<String, Long> durations = new LinkedHashMap<>();
 
     LOG.info("Calling awaitOperations...");
     awaitOperations(state);
+    long awaitEndTime = System.currentTimeMillis();
+    durations.put("awaitOperations", awaitEndTime - startTime);
     LOG.info("Calling verifyRuns...");
     state = verifyRuns(state);
+    long verifyEndTime = System.currentTimeMillis();
+    durations.put("verifyRuns", verifyEndTime - awaitEndTime);
     LOG.info("Calling runOperations with updated state: {}", state);
     state = runOperations(state);
+    long endTime = System.currentTimeMillis();
+    durations.put("runOperations", endTime - verifyEndTime);
     LOG.info("Got output state = {}", state);
+    saveState();
 
+    recordIteration(startTime, endTime, durations);
     LOG.info("One iteration of test run {} completed", getTestName());
   }
+
+  /**
+   * Adds the timings of an iteration to the history, along with the longest run of each monitored program that
+   * completed since the previous iteration, and checks the history against the objectives.
+   */
+  private void recordIteration(long startTime, long endTime, Map<String, Long> durations) throws Exception {
+    IterationHistory.Record previous = iterationHistory.getLatest();
+    // runs completed between iterations were triggered by the operations of the previous iteration
+    long sinceSecs = TimeUnit.MILLISECONDS.toSeconds(previous == null ? startTime : previous.getEndTime());
+    for (ProgramId program : getMonitoredPrograms()) {
+      List<RunRecord> runs = getProgramClient().getProgramRuns(program, ProgramRunStatus.COMPLETED.name(),
+                                                               sinceSecs, Long.MAX_VALUE, Integer.MAX_VALUE);
+      long longest = -1;
+      for (RunRecord run : runs) {
+        if (run.getStopTs() != null && run.getStopTs() >= sinceSecs) {
+          longest = Math.max(longest, TimeUnit.SECONDS.toMillis(run.getStopTs() - run.getStartTs()));
+        }
+      }
+      if (longest >= 0) {
+        durations.put(program.getProgram(), longest);
+      }
+    }
+    iterationHistory.add(new IterationHistory.Record(startTime, endTime, durations));
+    saveIterationHistory();
+    LOG.info("Iteration timings of test run {} in ms: {}", getTestName(), durations);
+
+    List<String> violations = new ArrayList<>();
+    for (IterationSlo slo : SLOS) {
+      String violation = slo.check(iterationHistory, SLO_MIN_SAMPLES);
+      if (violation != null) {
+        violations.add(violation);
+      }
+    }
+    if (!violations.isEmpty()) {
+      throw new AssertionError(String.format("Iterations of test run %s do not meet their objectives: %s",
+                                             getTestName(), violations));
+    }
+  }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * An append-only journal of the states of long running tests, next to a snapshot of the states of all tests.
+ * The state of a test is appended to the journal every time it changes, so that the progress of a run is not lost
+ * if the JVM crashes, and the cost of saving a state does not depend on the states of the other tests.
+ * When the journal has enough records, the latest states are written to the snapshot and the journal is truncated.
+ * When a run completes, the states are written to the output state file, and the journal and its snapshot are
+ * removed. Otherwise, the next run recovers the states from them.
+ */
+public final class StateJournal implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(StateJournal.class);
+  private static final Gson GSON = new Gson();
+  private static final Type STATES_TYPE = new TypeToken<Map<String, String>>() { }.getType();
+
+  private final Path snapshotFile;
+  private final Path journalFile;
+  private final int compactionRecords;
+  private FileOutputStream journalOutput;
+  private int records;
+
+  /**
+   * @param journalFile the file to append the states of tests to. The snapshot is written next to it
+   * @param compactionRecords the number of records in the journal after which it is compacted
+   */
+  public StateJournal(Path journalFile, int compactionRecords) {
+    this.snapshotFile = journalFile.resolveSibling(journalFile.getFileName() + ".snapshot");
+    this.journalFile = journalFile;
+    this.compactionRecords = compactionRecords;
+  }
+
+  /**
+   * Applies the snapshot and the journal left over from a previous run that did not complete to the given states.
+   *
+   * @param states the states of the tests, from the input state file. It is updated with the recovered states
+   * @return the given states
+   */
+  public synchronized Map<String, String> recover(Map<String, String> states) throws IOException {
+    if (Files.exists(snapshotFile)) {
+      try (Reader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+        Map<String, String> snapshot = GSON.fromJson(reader, STATES_TYPE);
+        states.putAll(snapshot);
+        LOG.info("Recovered {} test states from snapshot {}", snapshot.size(), snapshotFile);
+      }
+    }
+    if (!Files.exists(journalFile)) {
+      return states;
+    }
+    int recovered = 0;
+    try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        Record record;
+        try {
+          record = GSON.fromJson(line, Record.class);
+        } catch (JsonParseException e) {
+          record = null;
+        }
+        if (record == null || record.test == null) {
+          // only the last record can be incomplete, if the JVM crashed while writing it
+          LOG.warn("Ignoring incomplete record in state journal {}: {}", journalFile, line);
+          break;
+        }
+        states.put(record.test, record.state);
+        recovered++;
+      }
+    }
+    records = recovered;
+    LOG.info("Recovered {} test states from journal {}", recovered, journalFile);
+    return states;
+  }
+
+  /**
+   * Appends the state of a test to the journal, and compacts the journal if it has enough records.
+   *
+   * @param test the name of the test
+   * @param state the state of the test, in JSON
+   * @param states the states of all tests, which are written to the snapshot when the journal is compacted
+   */
+  public synchronized void append(String test, String state, Map<String, String> states) throws IOException {
+    if (journalOutput == null) {
+      journalOutput = new FileOutputStream(journalFile.toFile(), true);
+    }
+    journalOutput.write((GSON.toJson(new Record(test, state)) + "\n").getBytes(StandardCharsets.UTF_8));
+    journalOutput.getChannel().force(false);
+    records++;
+    if (records >= compactionRecords) {
+      compact(states);
+    }
+  }
+
+  /**
+   * Writes the states of all tests to the snapshot, and truncates the journal.
+   */
+  public synchronized void compact(Map<String, String> states) throws IOException {
+    writeStates(states, snapshotFile);
+
+    // the snapshot has all the states of the journal, so a crash before the truncation only replays them again
+    close();
+    Files.deleteIfExists(journalFile);
+    LOG.info("Compacted {} records of state journal {} into {}", records, journalFile, snapshotFile);
+    records = 0;
+  }
+
+  /**
+   * Writes the states of all tests to the output state file at the end of a run, and removes the journal
+   * and its snapshot.
+   */
+  public synchronized void complete(Map<String, String> states, Path outputFile) throws IOException {
+    writeStates(states, outputFile);
+    close();
+    Files.deleteIfExists(journalFile);
+    Files.deleteIfExists(snapshotFile);
+    records = 0;
+  }
+
+  // writes the states to a temporary file first, so that the given file always has complete states
+  private static void writeStates(Map<String, String> states, Path file) throws IOException {
+    Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+      GSON.toJson(states, writer);
+    }
+    Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (journalOutput != null) {
+      journalOutput.close();
+      journalOutput = null;
+    }
+  }
+
+  /**
+   * A record of the journal.
+   */
+  private static final class Record {
+    private final String test;
+    private final String state;
+
+    private Record(String test, String state) {
+      this.test = test;
+      this.state = state;
+    }
+  }
+}
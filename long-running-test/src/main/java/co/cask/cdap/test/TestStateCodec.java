@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+/**
+ * Converts the state of a long running test to and from the string that is saved in the state file.
+ *
+ * @param <T> Type of test state
+ */
+public interface TestStateCodec<T extends TestState> {
+  /**
+   * @return the given state as a string
+   */
+  String encode(T state);
+
+  /**
+   * @return the state represented by the given string
+   */
+  T decode(String encoded);
+}
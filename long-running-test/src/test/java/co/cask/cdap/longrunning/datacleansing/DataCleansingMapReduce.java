@@ -36,12 +36,14 @@ import com.google.gson.JsonParser;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A simple MapReduce that reads records from the rawRecords PartitionedFileSet and writes all records
@@ -111,17 +113,49 @@ public class DataCleansingMapReduce extends AbstractMapReduce {
 
     private Long time;
     private JsonParser jsonParser;
+    // the time is the same for all records, so there is one key per zip
+    private Map<Integer, PartitionKey> partitionKeys;
+    private int lastZip;
+    private PartitionKey lastPartitionKey;
 
     @Override
     public void initialize(MapReduceTaskContext<NullWritable, Text> mapReduceTaskContext) {
       this.time = Long.valueOf(mapReduceTaskContext.getRuntimeArguments().get(OUTPUT_PARTITION_KEY));
       this.jsonParser = new JsonParser();
+      this.partitionKeys = new HashMap<>();
     }
 
     @Override
     public PartitionKey getPartitionKey(NullWritable key, Text value) {
-      int zip = jsonParser.parse(value.toString()).getAsJsonObject().get("zip").getAsInt();
-      return PartitionKey.builder().addLongField("time", time).addIntField("zip", zip).build();
+      int zip;
+      if (value instanceof ZipRecord) {
+        zip = ((ZipRecord) value).getZip();
+      } else {
+        zip = jsonParser.parse(value.toString()).getAsJsonObject().get("zip").getAsInt();
+      }
+      // records of the same zip tend to come in runs
+      if (lastPartitionKey == null || zip != lastZip) {
+        lastPartitionKey = partitionKeys.computeIfAbsent(
+          zip, z -> PartitionKey.builder().addLongField("time", time).addIntField("zip", z).build());
+        lastZip = zip;
+      }
+      return lastPartitionKey;
+    }
+  }
+
+  /**
+   * A clean record, along with its zip, so that it does not need to be parsed again to be partitioned.
+   */
+  public static final class ZipRecord extends Text {
+    private int zip;
+
+    public int getZip() {
+      return zip;
+    }
+
+    public void set(Text record, int zip) {
+      set(record.getBytes(), 0, record.getLength());
+      this.zip = zip;
     }
   }
 
@@ -136,7 +170,24 @@ public class DataCleansingMapReduce extends AbstractMapReduce {
                                                                 Schema.Field.of("dob", Schema.of(Schema.Type.STRING)),
                                                                 Schema.Field.of("zip", Schema.of(Schema.Type.INT)));
 
+    /**
+     * Hadoop counters of the records, which have the same totals as the {@link DataCleansingApp#TOTAL_RECORDS_TABLE}.
+     */
+    public enum Records { CLEAN, INVALID }
+
+    // counts are kept in the mapper, and added to the table at the end of the task, or when they get too old
+    private static final long FLUSH_RECORDS = 1000000L;
+    private static final long FLUSH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     private SimpleSchemaMatcher schemaMatcher;
+    private int zipField;
+    private long cleanRecords;
+    private long invalidRecords;
+    private long lastFlushTime;
+    private Counter cleanCounter;
+    private Counter invalidCounter;
+    // reused for every clean record
+    private final ZipRecord cleanRecord = new ZipRecord();
     @UseDataSet(DataCleansingApp.TOTAL_RECORDS_TABLE)
     private KeyValueTable totalRecords;
     private MapReduceTaskContext<NullWritable, Text> mapReduceTaskContext;
@@ -159,16 +210,51 @@ public class DataCleansingMapReduce extends AbstractMapReduce {
       } else {
         schemaMatcher = new SimpleSchemaMatcher(Schema.parseJson(schemaJson));
       }
+      zipField = schemaMatcher.getFieldIndex("zip");
+      cleanCounter = context.getCounter(Records.CLEAN);
+      invalidCounter = context.getCounter(Records.INVALID);
+      lastFlushTime = System.currentTimeMillis();
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      flushCounts();
+    }
+
+    private void flushCounts() {
+      if (cleanRecords > 0) {
+        totalRecords.increment(DataCleansingApp.CLEAN_RECORD_KEY, cleanRecords);
+        cleanCounter.increment(cleanRecords);
+        cleanRecords = 0;
+      }
+      if (invalidRecords > 0) {
+        totalRecords.increment(DataCleansingApp.INVALID_RECORD_KEY, invalidRecords);
+        invalidCounter.increment(invalidRecords);
+        invalidRecords = 0;
+      }
+      lastFlushTime = System.currentTimeMillis();
     }
 
     public void map(LongWritable key, Text data, MapReduceTaskContext<NullWritable, Text> context)
       throws IOException, InterruptedException {
-      if (!schemaMatcher.matches(data.toString())) {
+      if (!schemaMatcher.matches(data.getBytes(), 0, data.getLength())) {
         context.write(DataCleansingApp.INVALID_RECORDS, NullWritable.get(), data);
-        totalRecords.increment(DataCleansingApp.INVALID_RECORD_KEY, 1);
+        invalidRecords++;
       } else {
-        context.write(DataCleansingApp.CLEAN_RECORDS, NullWritable.get(), data);
-        totalRecords.increment(DataCleansingApp.CLEAN_RECORD_KEY, 1);
+        Text record = data;
+        if (zipField >= 0 && schemaMatcher.hasIntegerValue(zipField)) {
+          // the zip was parsed while matching the schema, and is passed on to the TimeAndZipPartitioner
+          cleanRecord.set(data, (int) schemaMatcher.getIntegerValue(zipField));
+          record = cleanRecord;
+        }
+        context.write(DataCleansingApp.CLEAN_RECORDS, NullWritable.get(), record);
+        cleanRecords++;
+      }
+      // only check the time once in a while, since it is slower than counting
+      long records = cleanRecords + invalidRecords;
+      if (records >= FLUSH_RECORDS
+        || (records % 1000 == 0 && System.currentTimeMillis() - lastFlushTime >= FLUSH_INTERVAL_MILLIS)) {
+        flushCounts();
       }
     }
 
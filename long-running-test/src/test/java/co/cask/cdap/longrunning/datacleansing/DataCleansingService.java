@@ -17,7 +17,13 @@
 package co.cask.cdap.longrunning.datacleansing;
 
 import co.cask.cdap.api.Transactional;
+import co.cask.cdap.api.Transactionals;
+import co.cask.cdap.api.annotation.TransactionControl;
+import co.cask.cdap.api.annotation.TransactionPolicy;
 import co.cask.cdap.api.annotation.UseDataSet;
+import co.cask.cdap.api.dataset.lib.FileSet;
+import co.cask.cdap.api.dataset.lib.PartitionDetail;
+import co.cask.cdap.api.dataset.lib.PartitionFilter;
 import co.cask.cdap.api.dataset.lib.PartitionKey;
 import co.cask.cdap.api.dataset.lib.PartitionOutput;
 import co.cask.cdap.api.dataset.lib.PartitionedFileSet;
@@ -25,21 +31,47 @@ import co.cask.cdap.api.service.AbstractService;
 import co.cask.cdap.api.service.Service;
 import co.cask.cdap.api.service.http.AbstractHttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpContentConsumer;
+import co.cask.cdap.api.service.http.HttpServiceContext;
 import co.cask.cdap.api.service.http.HttpServiceRequest;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 /**
- * A {@link Service} to write to PartitionedFileSet.
+ * A {@link Service} to write to PartitionedFileSet. It must run with a single instance, since the times of the
+ * partitions it writes are only unique within one instance.
  */
 public class DataCleansingService extends AbstractService {
 
@@ -48,27 +80,70 @@ public class DataCleansingService extends AbstractService {
   @Override
   protected void configure() {
     setName(NAME);
-    setDescription("A service to ingest data into the rawRecords partitioned file set.");
+    setDescription("A service to ingest data into the rawRecords partitioned file set, and to verify the clean " +
+                     "and invalid records.");
     addHandler(new RecordsHandler());
   }
 
   /**
-   * A handler that allows writing to the 'rawRecords' PartitionedFileSet.
+   * A handler that allows writing to the 'rawRecords' PartitionedFileSet, and computing the digest of the records
+   * in the 'cleanRecords' and 'invalidRecords' PartitionedFileSets.
    */
   @Path("/v1")
   public static class RecordsHandler extends AbstractHttpServiceHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(RecordsHandler.class);
+    private static final Gson GSON = new Gson();
+    private static final Type PARTITION_TIMES_TYPE = new TypeToken<Map<Integer, Long>>() { }.getType();
+    // partitions written concurrently need distinct times. This only holds within one JVM, so the service must
+    // run with a single instance.
+    private static final AtomicLong LAST_PARTITION_TIME = new AtomicLong();
+    // bulk ingestion writes partitions with a bounded number of threads, and a bounded amount of data in flight
+    private static final int WRITE_THREADS = 8;
+    private static final int MAX_BYTES_IN_FLIGHT = 64 * 1024 * 1024;
+    // time to wait for the partitions of a request to be written once the request ends
+    private static final long WRITE_TIMEOUT_SECONDS = 300;
+    private static final String BULK_PATH_PREFIX = "bulk/";
+
+    private ExecutorService writeExecutor;
 
     @SuppressWarnings("unused")
     @UseDataSet(DataCleansing.RAW_RECORDS)
     private PartitionedFileSet rawRecords;
 
+
+    @Override
+    public void initialize(HttpServiceContext context) throws Exception {
+      super.initialize(context);
+      if (context.getInstanceCount() != 1) {
+        throw new IllegalStateException(String.format(
+          "%s must run with a single instance, so that its partitions have distinct times, but it has %d instances",
+          NAME, context.getInstanceCount()));
+      }
+      writeExecutor = Executors.newFixedThreadPool(
+        WRITE_THREADS, new ThreadFactoryBuilder().setNameFormat("partition-writer-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void destroy() {
+      if (writeExecutor == null) {
+        return;
+      }
+      writeExecutor.shutdown();
+      try {
+        if (!writeExecutor.awaitTermination(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          LOG.warn("Timed out waiting for partitions of '{}' to be written", DataCleansing.RAW_RECORDS);
+          writeExecutor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
     @POST
     @Path("/records/raw")
     public HttpContentConsumer write(HttpServiceRequest request, HttpServiceResponder responder) {
-      PartitionKey key = PartitionKey.builder().addLongField("time", System.currentTimeMillis()).build();
-      final PartitionOutput partitionOutput = rawRecords.getPartitionOutput(key);
+      final PartitionOutput partitionOutput = rawRecords.getPartitionOutput(nextPartitionKey());
       final Location location = partitionOutput.getLocation();
       try {
         final WritableByteChannel channel = Channels.newChannel(location.getOutputStream());
@@ -107,5 +182,300 @@ public class DataCleansingService extends AbstractService {
         return null;
       }
     }
+
+    private PartitionKey nextPartitionKey() {
+      long now = System.currentTimeMillis();
+      long time = LAST_PARTITION_TIME.updateAndGet(last -> Math.max(last + 1, now));
+      return PartitionKey.builder().addLongField("time", time).build();
+    }
+
+    /**
+     * Writes many partitions of 'rawRecords' from one request, whose body is framed by {@link PartitionFrames}.
+     * The partitions are written concurrently, and added to the dataset in one transaction once the request completes,
+     * so that a failed request adds none of them. Responds with the time of the partition for each partition id of
+     * the request, or with 503 if the data of the request is received faster than it can be written.
+     */
+    @POST
+    @Path("/records/raw/bulk")
+    @TransactionPolicy(TransactionControl.EXPLICIT)
+    public HttpContentConsumer writeBulk(HttpServiceRequest request, HttpServiceResponder responder) {
+      PartitionedFileSet fileSet = getContext().getDataset(DataCleansing.RAW_RECORDS);
+      FileSet files = fileSet.getEmbeddedFileSet();
+      getContext().discardDataset(fileSet);
+      return new BulkPartitionConsumer(files);
+    }
+
+    /**
+     * Responds with the {@link RecordDigest} of the records in the partitions of the 'cleanRecords' or the
+     * 'invalidRecords' dataset with the given time. The records are streamed from the files of the partitions,
+     * so only the digest is held in memory. Only the partitions are looked up in a transaction, since reading
+     * large partitions could take longer than the transaction timeout.
+     */
+    @GET
+    @Path("/records/{dataset}/digest")
+    @TransactionPolicy(TransactionControl.EXPLICIT)
+    public void digest(HttpServiceRequest request, HttpServiceResponder responder,
+                       @PathParam("dataset") String dataset, @QueryParam("time") long time) throws IOException {
+      if (!DataCleansing.CLEAN_RECORDS.equals(dataset) && !DataCleansing.INVALID_RECORDS.equals(dataset)) {
+        responder.sendError(400, String.format("Invalid dataset '%s'", dataset));
+        return;
+      }
+
+      PartitionFilter filter = PartitionFilter.builder().addValueCondition("time", time).build();
+      List<Location> locations = Transactionals.execute(getContext(), context -> {
+        PartitionedFileSet fileSet = context.getDataset(dataset);
+        List<Location> partitionLocations = new ArrayList<>();
+        for (PartitionDetail partition : fileSet.getPartitions(filter)) {
+          partitionLocations.add(partition.getLocation());
+        }
+        return partitionLocations;
+      });
+
+      RecordDigest digest = new RecordDigest();
+      for (Location location : locations) {
+        for (Location file : location.list()) {
+          // skip the markers and checksums written along with the output of the MapReduce
+          if (file.getName().startsWith("_") || file.getName().startsWith(".")) {
+            continue;
+          }
+          try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              if (!line.isEmpty()) {
+                digest.add(line);
+              }
+            }
+          }
+        }
+      }
+      responder.sendJson(200, digest);
+    }
+
+    /**
+     * Consumes a body framed by {@link PartitionFrames}, handing the data of each partition to a
+     * {@link PartitionWriter}.
+     */
+    private final class BulkPartitionConsumer extends HttpContentConsumer {
+      private final FileSet files;
+      private final Semaphore bytesInFlight = new Semaphore(MAX_BYTES_IN_FLIGHT);
+      private final ByteBuffer header = ByteBuffer.allocate(PartitionFrames.HEADER_SIZE);
+      private final Map<Integer, PartitionWriter> writers = new LinkedHashMap<>();
+      private PartitionWriter frameWriter;
+      private int frameRemaining;
+
+      private BulkPartitionConsumer(FileSet files) {
+        this.files = files;
+      }
+
+      @Override
+      public void onReceived(ByteBuffer chunk, Transactional transactional) throws Exception {
+        while (chunk.hasRemaining()) {
+          if (frameWriter == null) {
+            readHeader(chunk);
+            continue;
+          }
+          int length = Math.min(frameRemaining, chunk.remaining());
+          // the chunk is reused once this returns, so its data is copied for the writer
+          byte[] data = new byte[length];
+          chunk.get(data);
+          frameWriter.write(data);
+          frameRemaining -= length;
+          if (frameRemaining == 0) {
+            frameWriter = null;
+          }
+        }
+      }
+
+      private void readHeader(ByteBuffer chunk) {
+        while (header.hasRemaining() && chunk.hasRemaining()) {
+          header.put(chunk.get());
+        }
+        if (header.hasRemaining()) {
+          return;
+        }
+        header.flip();
+        int partitionId = header.getInt();
+        int length = header.getInt();
+        header.clear();
+        if (length < 0 || length > PartitionFrames.MAX_FRAME_SIZE) {
+          throw new IllegalArgumentException(String.format("Invalid frame length %d for partition %d",
+                                                           length, partitionId));
+        }
+        PartitionWriter writer = writers.get(partitionId);
+        if (writer == null) {
+          writer = new PartitionWriter(files, nextPartitionKey(), writeExecutor, bytesInFlight);
+          writers.put(partitionId, writer);
+        } else if (writer.isEnded()) {
+          throw new IllegalArgumentException(String.format("Partition %d was already ended", partitionId));
+        }
+        if (length == 0) {
+          writer.end();
+        } else {
+          frameWriter = writer;
+          frameRemaining = length;
+        }
+      }
+
+      // waits for all partitions to be written, and adds them to the dataset in one transaction
+      private void addPartitions(Transactional transactional) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WRITE_TIMEOUT_SECONDS);
+        for (PartitionWriter writer : writers.values()) {
+          // fails if the partition could not be written, or if it is not written by the deadline
+          writer.awaitWritten(deadline);
+        }
+        transactional.execute(context -> {
+          PartitionedFileSet fileSet = context.getDataset(DataCleansing.RAW_RECORDS);
+          for (PartitionWriter writer : writers.values()) {
+            fileSet.addPartition(writer.getKey(), writer.getPath());
+          }
+        });
+        for (PartitionWriter writer : writers.values()) {
+          writer.setAdded();
+        }
+      }
+
+      @Override
+      @TransactionPolicy(TransactionControl.EXPLICIT)
+      public void onFinish(HttpServiceResponder responder) throws Exception {
+        if (frameWriter != null || header.position() > 0) {
+          throw new IllegalArgumentException("The request ended in the middle of a frame");
+        }
+        for (PartitionWriter writer : writers.values()) {
+          if (!writer.isEnded()) {
+            throw new IllegalArgumentException("The request ended before all partitions were ended");
+          }
+        }
+        addPartitions(getContext());
+        Map<Integer, Long> partitionTimes = new LinkedHashMap<>();
+        for (Map.Entry<Integer, PartitionWriter> entry : writers.entrySet()) {
+          partitionTimes.put(entry.getKey(), (Long) entry.getValue().getKey().getField("time"));
+        }
+        responder.sendJson(200, partitionTimes, PARTITION_TIMES_TYPE, GSON);
+      }
+
+      @Override
+      @TransactionPolicy(TransactionControl.EXPLICIT)
+      public void onError(HttpServiceResponder responder, Throwable failureCause) {
+        // partitions are only added once the request completes, so none of the partitions of the request is kept
+        for (PartitionWriter writer : writers.values()) {
+          writer.abort();
+        }
+        LOG.debug("Unable to write partitions of '{}'", DataCleansing.RAW_RECORDS, failureCause);
+        int status = failureCause instanceof RejectedExecutionException ? 503 : 400;
+        responder.sendError(status, String.format("Unable to write partitions. Reason: '%s'",
+                                                  failureCause.getMessage()));
+      }
+    }
+
+    /**
+     * Writes the data of one partition with an executor, in the order it was received.
+     */
+    private static final class PartitionWriter {
+      private final PartitionKey key;
+      private final String path;
+      private final Location location;
+      private final Executor executor;
+      private final Semaphore bytesInFlight;
+      // completes with the output stream once all the data received so far is written
+      private CompletableFuture<OutputStream> pending;
+      private boolean ended;
+      private boolean added;
+
+      private PartitionWriter(FileSet files, PartitionKey key, Executor executor, Semaphore bytesInFlight) {
+        this.key = key;
+        this.path = BULK_PATH_PREFIX + key.getField("time");
+        this.location = files.getLocation(path);
+        this.executor = executor;
+        this.bytesInFlight = bytesInFlight;
+        this.pending = CompletableFuture.supplyAsync(() -> {
+          try {
+            return location.getOutputStream();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, executor);
+      }
+
+      private PartitionKey getKey() {
+        return key;
+      }
+
+      private String getPath() {
+        return path;
+      }
+
+      private boolean isEnded() {
+        return ended;
+      }
+
+      /**
+       * Writes data asynchronously. Fails if too much data is waiting to be written, rather than blocking the thread
+       * that receives the request.
+       */
+      private void write(byte[] data) {
+        if (!bytesInFlight.tryAcquire(data.length)) {
+          throw new RejectedExecutionException(String.format(
+            "More than %d bytes of the request are waiting to be written", MAX_BYTES_IN_FLIGHT));
+        }
+        pending = pending.whenCompleteAsync((out, failure) -> {
+          try {
+            if (failure == null) {
+              out.write(data);
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } finally {
+            bytesInFlight.release(data.length);
+          }
+        }, executor);
+      }
+
+      /**
+       * Closes the file of the partition once all data is written.
+       */
+      private void end() {
+        ended = true;
+        pending = pending.thenApplyAsync(out -> {
+          try {
+            out.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          return out;
+        }, executor);
+      }
+
+      private void awaitWritten(long deadline) throws Exception {
+        pending.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      }
+
+      private void setAdded() {
+        added = true;
+      }
+
+      /**
+       * Deletes the file of the partition, unless the partition was added to the dataset.
+       */
+      private void abort() {
+        if (added) {
+          return;
+        }
+        pending.whenCompleteAsync((out, failure) -> {
+          if (out != null) {
+            try {
+              out.close();
+            } catch (IOException e) {
+              LOG.warn("Failed to close {}", location, e);
+            }
+          }
+          try {
+            location.delete();
+          } catch (IOException e) {
+            LOG.warn("Failed to delete {}", location, e);
+          }
+        }, executor);
+      }
+    }
   }
 }
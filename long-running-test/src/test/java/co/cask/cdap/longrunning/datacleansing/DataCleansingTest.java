@@ -18,37 +18,60 @@ package co.cask.cdap.longrunning.datacleansing;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
-import co.cask.cdap.client.QueryClient;
-import co.cask.cdap.common.UnauthenticatedException;
-import co.cask.cdap.explore.client.ExploreExecutionResult;
 import co.cask.cdap.proto.ProgramRunStatus;
-import co.cask.cdap.proto.QueryResult;
 import co.cask.cdap.proto.RunRecord;
 import co.cask.cdap.proto.id.DatasetId;
-import co.cask.cdap.security.spi.authorization.UnauthorizedException;
+import co.cask.cdap.proto.id.ProgramId;
+import co.cask.cdap.security.authentication.client.AccessToken;
 import co.cask.cdap.test.ApplicationManager;
 import co.cask.cdap.test.LongRunningTestBase;
 import co.cask.cdap.test.ServiceManager;
-import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
 import io.cdap.common.http.HttpRequest;
+import io.cdap.common.http.HttpRequestConfig;
 import io.cdap.common.http.HttpResponse;
 import org.junit.Assert;
 
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
 
 /**
  * Data Cleansing long running test
  */
 public class DataCleansingTest extends LongRunningTestBase<DataCleansingTestState> {
-  private static final int CLEAN_RECORDS_PER_BATCH = 70;
-  private static final int INVALID_RECORDS_PER_BATCH = 30;
+  // each iteration writes the batches of records to partitions concurrently
+  private static final int RECORDS_PER_BATCH = Integer.getInteger("datacleansing.records.per.batch", 100);
+  private static final double INVALID_RATIO =
+    Double.parseDouble(System.getProperty("datacleansing.invalid.ratio", "0.3"));
+  private static final int PARTITIONS = Integer.getInteger("datacleansing.partitions", 1);
+  // maximum number of partitions written at the same time
+  private static final int WRITE_THREADS = Integer.getInteger("datacleansing.write.threads", 8);
+  // whether to write all partitions in one request, rather than one request per partition
+  private static final boolean BULK_INGEST = Boolean.getBoolean("datacleansing.bulk.ingest");
+  private static final long MAPREDUCE_TIMEOUT_MINUTES = Long.getLong("datacleansing.mapreduce.timeout.minutes", 5L);
+  private static final int CHUNK_SIZE = 64 * 1024;
 
   private static final String DATACLEANSING_MAPREDUCE_NAME = "DataCleansingMapReduce";
   private static final String DATACLEANSING_NAME = "DataCleansing";
@@ -83,7 +106,7 @@ public class DataCleansingTest extends LongRunningTestBase<DataCleansingTestStat
 
   @Override
   public DataCleansingTestState getInitialState() {
-    return new DataCleansingTestState(0, 0, 0, 0, 0);
+    return new RecordGenerator(1, 1, 0, 0).toState(0);
   }
 
   @Override
@@ -95,10 +118,11 @@ public class DataCleansingTest extends LongRunningTestBase<DataCleansingTestStat
   public DataCleansingTestState verifyRuns(DataCleansingTestState state) throws Exception {
     LOG.info("verifying runs for data cleaning");
     // For now, check total number of clean records and invalid records
-    Assert.assertEquals(state.getEndInvalidRecordPid(), getTotalRecords(true) + getTotalRecords(false));
+    RecordGenerator generator = RecordGenerator.fromState(state);
+    Assert.assertEquals(generator.getLastPid(), getTotalRecords(true) + getTotalRecords(false));
 
     // verify segregated records
-    Assert.assertTrue(verifyRecordsWithExplore(state));
+    verifyRecordDigests(state.getTimestamp(), generator);
     return state;
   }
 
@@ -106,15 +130,28 @@ public class DataCleansingTest extends LongRunningTestBase<DataCleansingTestStat
     return getApplicationManager(getLongRunningNamespace().app(DATACLEANSING_NAME));
   }
 
+  @Override
+  protected Collection<ProgramId> getMonitoredPrograms() {
+    return Collections.singletonList(
+      getLongRunningNamespace().app(DATACLEANSING_NAME).mr(DATACLEANSING_MAPREDUCE_NAME));
+  }
+
   @Override
   public DataCleansingTestState runOperations(DataCleansingTestState state) throws Exception {
     ApplicationManager applicationManager = getApplicationManager();
     ServiceManager serviceManager = applicationManager.getServiceManager(DataCleansingService.NAME);
     URL serviceURL = serviceManager.getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
-    LOG.info("Writing {} events in one batch", CLEAN_RECORDS_PER_BATCH + INVALID_RECORDS_PER_BATCH);
-    // write a set of records to one partition and run the DataCleansingMapReduce job on that one partition
-    createPartition(serviceURL, state);
+    int invalidRecordsPerBatch = (int) Math.round(RECORDS_PER_BATCH * INVALID_RATIO);
+    RecordGenerator generator = new RecordGenerator(RecordGenerator.fromState(state).getLastPid() + 1, PARTITIONS,
+                                                    RECORDS_PER_BATCH, invalidRecordsPerBatch);
+    LOG.info("Writing {} events in {} partitions", generator.getTotalRecords(), PARTITIONS);
+    // write the records to partitions and run the DataCleansingMapReduce job on those partitions
+    if (BULK_INGEST) {
+      createPartitionsInBulk(serviceURL, generator);
+    } else {
+      createPartitions(serviceURL, generator);
+    }
     long now = System.currentTimeMillis();
     ImmutableMap<String, String> args = ImmutableMap.of(OUTPUT_PARTITION_KEY, Long.toString(now),
                                                         SCHEMA_KEY, SCHEMAJSON);
@@ -122,37 +159,111 @@ public class DataCleansingTest extends LongRunningTestBase<DataCleansingTestStat
     applicationManager.getMapReduceManager(DATACLEANSING_MAPREDUCE_NAME).start(args);
     applicationManager.getMapReduceManager(DATACLEANSING_MAPREDUCE_NAME).waitForRuns(ProgramRunStatus.COMPLETED,
                                                                                      history.size() + 1,
-                                                                                     5, TimeUnit.MINUTES);
-
-    return new DataCleansingTestState(now, state.getEndInvalidRecordPid() + 1,
-                                      state.getEndInvalidRecordPid() + CLEAN_RECORDS_PER_BATCH,
-                                      state.getEndInvalidRecordPid() + CLEAN_RECORDS_PER_BATCH + 1,
-                                      state.getEndInvalidRecordPid() + CLEAN_RECORDS_PER_BATCH +
-                                      INVALID_RECORDS_PER_BATCH);
+                                                                                     MAPREDUCE_TIMEOUT_MINUTES,
+                                                                                     TimeUnit.MINUTES);
+    profileMapReduce(getLongRunningNamespace().app(DATACLEANSING_NAME).mr(DATACLEANSING_MAPREDUCE_NAME));
+    return generator.toState(now);
   }
 
-  private void createPartition(URL serviceUrl, DataCleansingTestState state)
-    throws IOException, UnauthenticatedException, UnauthorizedException {
+  // writes the partitions concurrently, each with one request
+  private void createPartitions(URL serviceUrl, RecordGenerator generator) throws Exception {
     URL url = new URL(serviceUrl, "v1/records/raw");
-    List<String> records = new ArrayList<>();
-    generateRecords(records, state.getEndInvalidRecordPid() + 1, false);
-    generateRecords(records, state.getEndInvalidRecordPid() + CLEAN_RECORDS_PER_BATCH + 1, true);
-    String body = Joiner.on("\n").join(records) + "\n";
-    HttpRequest request = HttpRequest.post(url).withBody(body).build();
-    HttpResponse response = getRestClient().execute(request, getClientConfig().getAccessToken());
-    Assert.assertEquals(200, response.getResponseCode());
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(generator.getPartitions(),
+                                                                                 WRITE_THREADS)));
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < generator.getPartitions(); i++) {
+        int partition = i;
+        futures.add(executor.submit(() -> {
+          createPartition(url, generator, partition);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
   }
 
-  private void generateRecords(List<String> records, long start, boolean invalid) {
-    long numRecords = invalid ? INVALID_RECORDS_PER_BATCH : CLEAN_RECORDS_PER_BATCH;
-    for (long i = start; i < (start + numRecords); i++) {
-      records.add(getRecord(i, invalid));
+  // streams the records of a partition in a chunked request body, so that they are never held in memory
+  private void createPartition(URL url, RecordGenerator generator, int partition) throws IOException {
+    HttpURLConnection connection = openChunkedConnection(url);
+    try {
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(),
+                                                                     StandardCharsets.UTF_8), CHUNK_SIZE)) {
+        generator.write(partition, writer);
+      }
+      Assert.assertEquals(200, connection.getResponseCode());
+    } finally {
+      connection.disconnect();
     }
   }
 
-  private String getRecord(long index, boolean invalid) {
-    String zip = invalid ? "84125q" : "84125";
-    return GSON.toJson(new Person(index, "bob", "02-12-1983", zip));
+  // streams the records of all partitions in one request, framed by PartitionFrames
+  private void createPartitionsInBulk(URL serviceUrl, RecordGenerator generator) throws IOException {
+    HttpURLConnection connection = openChunkedConnection(new URL(serviceUrl, "v1/records/raw/bulk"));
+    try {
+      try (DataOutputStream out = new DataOutputStream(connection.getOutputStream())) {
+        for (int i = 0; i < generator.getPartitions(); i++) {
+          try (Writer writer = new OutputStreamWriter(PartitionFrames.newPartitionStream(out, i, CHUNK_SIZE),
+                                                      StandardCharsets.UTF_8)) {
+            generator.write(i, writer);
+          }
+        }
+      }
+      Assert.assertEquals(200, connection.getResponseCode());
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  // the RESTClient cannot stream a body that is being generated, so the connection is opened with the same
+  // timeouts, SSL and authentication settings as the client
+  private HttpURLConnection openChunkedConnection(URL url) throws IOException {
+    HttpRequestConfig requestConfig = getClientConfig().getDefaultRequestConfig();
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setChunkedStreamingMode(CHUNK_SIZE);
+    connection.setConnectTimeout(requestConfig.getConnectTimeout());
+    connection.setReadTimeout(requestConfig.getReadTimeout());
+    if (connection instanceof HttpsURLConnection && !requestConfig.isVerifySSLCert()) {
+      disableCertCheck((HttpsURLConnection) connection);
+    }
+    AccessToken accessToken = getClientConfig().getAccessToken();
+    if (accessToken != null) {
+      connection.setRequestProperty("Authorization", accessToken.getTokenType() + " " + accessToken.getValue());
+    }
+    return connection;
+  }
+
+  private static void disableCertCheck(HttpsURLConnection connection) throws IOException {
+    TrustManager trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        // trust all
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        // trust all
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    try {
+      SSLContext sslContext = SSLContext.getInstance("SSL");
+      sslContext.init(null, new TrustManager[] { trustAll }, new SecureRandom());
+      connection.setSSLSocketFactory(sslContext.getSocketFactory());
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Failed to disable the certificate check of " + connection.getURL(), e);
+    }
+    connection.setHostnameVerifier((hostname, session) -> true);
   }
 
   // pass true to get the number of invalid records; pass false to get the number of valid records processed.
@@ -163,37 +274,20 @@ public class DataCleansingTest extends LongRunningTestBase<DataCleansingTestStat
     return readLong(totalRecordsTable.read(recordKey));
   }
 
-  // TODO: Use service instead of explore as Explore is slower
-  private boolean verifyRecordsWithExplore(DataCleansingTestState state) throws Exception {
-    QueryClient queryClient = new QueryClient(getClientConfig());
-    String cleanRecordsQuery = "SELECT * FROM dataset_" + CLEAN_RECORDS_DATASET + " where TIME = "
-      + state.getTimestamp();
-    String invalidRecordsQuery = "SELECT * FROM dataset_" + INVALID_RECORDS_DATASET + " where TIME = "
-      + state.getTimestamp();
-
-    // Reduce wait time by submitting both the queries
-    ListenableFuture<ExploreExecutionResult> cleanRecordsExecute =
-      queryClient.execute(getLongRunningNamespace(), cleanRecordsQuery);
-    ListenableFuture<ExploreExecutionResult> invalidRecordsExecute =
-      queryClient.execute(getLongRunningNamespace(), invalidRecordsQuery);
-    ExploreExecutionResult cleanRecordsResult = cleanRecordsExecute.get();
-    ExploreExecutionResult invalidRecordsResult = invalidRecordsExecute.get();
-
-    return (verifyResults(cleanRecordsResult, state.getStartCleanRecordPid(), false) &&
-      verifyResults(invalidRecordsResult, state.getStartInvalidRecordPid(), true));
-  }
-
-  private boolean verifyResults(ExploreExecutionResult result, long index, boolean invalid) {
-    while (result.hasNext()) {
-      QueryResult next = result.next();
-      List<Object> columns = next.getColumns();
-      String expectedRecord = getRecord(index, invalid);
-      if (!expectedRecord.equalsIgnoreCase((String) columns.get(0))) {
-        return false;
-      }
-      index++;
-    }
-    return true;
+  // compares the digests of the records written by the DataCleansingMapReduce with those of the generated records
+  private void verifyRecordDigests(long timestamp, RecordGenerator generator) throws Exception {
+    URL serviceURL = getApplicationManager().getServiceManager(DataCleansingService.NAME)
+      .getServiceURL(PROGRAM_START_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    Assert.assertEquals(generator.getDigest(false), getRecordDigest(serviceURL, CLEAN_RECORDS_DATASET, timestamp));
+    Assert.assertEquals(generator.getDigest(true), getRecordDigest(serviceURL, INVALID_RECORDS_DATASET, timestamp));
+  }
+
+  private RecordDigest getRecordDigest(URL serviceURL, String dataset, long timestamp) throws Exception {
+    URL url = new URL(serviceURL, String.format("v1/records/%s/digest?time=%d", dataset, timestamp));
+    HttpResponse response = getRestClient().execute(HttpRequest.get(url).build(),
+                                                    getClientConfig().getAccessToken());
+    Assert.assertEquals(200, response.getResponseCode());
+    return GSON.fromJson(response.getResponseBodyAsString(), RecordDigest.class);
   }
 
   private long readLong(byte[] bytes) {
@@ -20,7 +20,8 @@ import co.cask.cdap.test.TestState;
 import com.google.common.base.Objects;
 
 /**
- * State for DataCleansingTest
+ * State for DataCleansingTest. The pids describe the records of the first partition written by the last iteration;
+ * the other partitions have the same number of clean and invalid records, with the pids that follow.
  */
 public class DataCleansingTestState implements TestState {
 
@@ -29,14 +30,17 @@ public class DataCleansingTestState implements TestState {
   private final long endCleanRecordPid;
   private final long startInvalidRecordPid;
   private final long endInvalidRecordPid;
+  // states saved before records were written to multiple partitions don't have it
+  private final int partitions;
 
   public DataCleansingTestState(long timestamp, long startCleanRecordPid, long endCleanRecordPid,
-                                long startInvalidRecordPid, long endInvalidRecordPid) {
+                                long startInvalidRecordPid, long endInvalidRecordPid, int partitions) {
     this.timestamp = timestamp;
     this.startCleanRecordPid = startCleanRecordPid;
     this.endCleanRecordPid = endCleanRecordPid;
     this.startInvalidRecordPid = startInvalidRecordPid;
     this.endInvalidRecordPid = endInvalidRecordPid;
+    this.partitions = partitions;
   }
 
   public long getTimestamp () {
@@ -59,6 +63,10 @@ public class DataCleansingTestState implements TestState {
     return endInvalidRecordPid;
   }
 
+  public int getPartitions() {
+    return Math.max(partitions, 1);
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -67,6 +75,7 @@ public class DataCleansingTestState implements TestState {
       .add("endCleanRecordPid", endCleanRecordPid)
       .add("startInvalidRecordPid", startInvalidRecordPid)
       .add("endInvalidRecordPid", endInvalidRecordPid)
+      .add("partitions", partitions)
       .toString();
   }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.longrunning.datacleansing;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The framing of the body of a bulk ingestion request to {@link DataCleansingService}, which carries the records of
+ * many partitions. The body is a sequence of frames, each made of the id of a partition (an int), the length of the
+ * data (an int) and the data. The frames of different partitions can be interleaved, and a frame with no data ends
+ * its partition.
+ */
+public final class PartitionFrames {
+  public static final int HEADER_SIZE = 8;
+  public static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+  private PartitionFrames() { }
+
+  /**
+   * Returns a stream that writes the data of a partition as frames to the given output. Closing the stream ends
+   * the partition, but does not close the output.
+   *
+   * @param out the output to write frames to
+   * @param partitionId the id of the partition in the request
+   * @param frameSize the size of the data in each frame, which is also the size of the buffer of the stream
+   */
+  public static OutputStream newPartitionStream(DataOutputStream out, int partitionId, int frameSize) {
+    if (frameSize <= 0 || frameSize > MAX_FRAME_SIZE) {
+      throw new IllegalArgumentException("Frame size must be between 1 and " + MAX_FRAME_SIZE);
+    }
+    return new PartitionOutputStream(out, partitionId, frameSize);
+  }
+
+  private static final class PartitionOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final int partitionId;
+    private final byte[] buffer;
+    private int size;
+    private boolean closed;
+
+    private PartitionOutputStream(DataOutputStream out, int partitionId, int frameSize) {
+      this.out = out;
+      this.partitionId = partitionId;
+      this.buffer = new byte[frameSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (size == buffer.length) {
+        writeFrame();
+      }
+      buffer[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (size == buffer.length) {
+          writeFrame();
+        }
+        int n = Math.min(len, buffer.length - size);
+        System.arraycopy(b, off, buffer, size, n);
+        size += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (size > 0) {
+        writeFrame();
+      }
+      // an empty frame ends the partition
+      writeFrame();
+    }
+
+    private void writeFrame() throws IOException {
+      out.writeInt(partitionId);
+      out.writeInt(size);
+      out.write(buffer, 0, size);
+      size = 0;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.longrunning.datacleansing;
+
+import com.google.common.base.Objects;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A digest of a set of records, made of their number and the sum of their hashes. Since the sum does not depend on
+ * the order of the records, the digest of the records written by the DataCleansingMapReduce can be computed by
+ * {@link DataCleansingService} while it reads them, and compared to the digest of the records generated by the test.
+ */
+public final class RecordDigest {
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private long records;
+  private long checksum;
+
+  /**
+   * Adds a record to the digest.
+   */
+  public void add(String record) {
+    records++;
+    // overflows wrap around, which keeps the sum independent of the order
+    checksum += HASH_FUNCTION.hashString(record, StandardCharsets.UTF_8).asLong();
+  }
+
+  public long getRecords() {
+    return records;
+  }
+
+  public long getChecksum() {
+    return checksum;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RecordDigest that = (RecordDigest) o;
+    return records == that.records && checksum == that.checksum;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(records, checksum);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("records", records)
+      .add("checksum", checksum)
+      .toString();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.longrunning.datacleansing;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Generates the records written by {@link DataCleansingTest} in one iteration, without holding them in memory.
+ * The records of an iteration have consecutive pids, starting at a given pid, and are split into partitions of the
+ * same size. In each partition, the records are clean, followed by the invalid records. Since the records only
+ * depend on the pid of the first record and the sizes of the partitions, they can be generated again to verify
+ * the output of the DataCleansingMapReduce.
+ */
+public final class RecordGenerator {
+  private static final Gson GSON = new Gson();
+
+  private final long firstPid;
+  private final int partitions;
+  private final int recordsPerPartition;
+  private final int invalidRecordsPerPartition;
+
+  /**
+   * @param firstPid the pid of the first record
+   * @param partitions the number of partitions
+   * @param recordsPerPartition the number of records in each partition
+   * @param invalidRecordsPerPartition the number of invalid records in each partition
+   */
+  public RecordGenerator(long firstPid, int partitions, int recordsPerPartition, int invalidRecordsPerPartition) {
+    if (invalidRecordsPerPartition > recordsPerPartition) {
+      throw new IllegalArgumentException(
+        String.format("Invalid records per partition %d is more than the records per partition %d",
+                      invalidRecordsPerPartition, recordsPerPartition));
+    }
+    this.firstPid = firstPid;
+    this.partitions = partitions;
+    this.recordsPerPartition = recordsPerPartition;
+    this.invalidRecordsPerPartition = invalidRecordsPerPartition;
+  }
+
+  /**
+   * Creates a generator for the records described by the given state.
+   */
+  public static RecordGenerator fromState(DataCleansingTestState state) {
+    if (state.getStartCleanRecordPid() == 0) {
+      // pids start at 1, so this is the initial state, from before any records were written
+      return new RecordGenerator(1, 1, 0, 0);
+    }
+    int recordsPerPartition = (int) (state.getEndInvalidRecordPid() - state.getStartCleanRecordPid() + 1);
+    int invalidRecordsPerPartition = (int) (state.getEndInvalidRecordPid() - state.getStartInvalidRecordPid() + 1);
+    return new RecordGenerator(state.getStartCleanRecordPid(), state.getPartitions(),
+                               Math.max(recordsPerPartition, 0), Math.max(invalidRecordsPerPartition, 0));
+  }
+
+  /**
+   * Creates the state of an iteration that wrote the records of this generator.
+   */
+  public DataCleansingTestState toState(long timestamp) {
+    long startInvalidPid = firstPid + recordsPerPartition - invalidRecordsPerPartition;
+    return new DataCleansingTestState(timestamp, firstPid, startInvalidPid - 1, startInvalidPid,
+                                      firstPid + recordsPerPartition - 1, partitions);
+  }
+
+  public int getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * @return the pid of the last record of the last partition
+   */
+  public long getLastPid() {
+    return firstPid + getTotalRecords() - 1;
+  }
+
+  public long getTotalRecords() {
+    return (long) partitions * recordsPerPartition;
+  }
+
+  public long getTotalInvalidRecords() {
+    return (long) partitions * invalidRecordsPerPartition;
+  }
+
+  /**
+   * @return whether the record with the given pid is invalid
+   */
+  public boolean isInvalid(long pid) {
+    return (pid - firstPid) % recordsPerPartition >= recordsPerPartition - invalidRecordsPerPartition;
+  }
+
+  /**
+   * @return whether the record with the given pid was generated
+   */
+  public boolean contains(long pid) {
+    return pid >= firstPid && pid <= getLastPid();
+  }
+
+  /**
+   * Writes the records of a partition, one per line.
+   *
+   * @param partition the index of the partition, from 0 to the number of partitions - 1
+   */
+  public void write(int partition, Writer writer) throws IOException {
+    long start = firstPid + (long) partition * recordsPerPartition;
+    for (long pid = start; pid < start + recordsPerPartition; pid++) {
+      writer.write(getRecord(pid));
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Computes the digest of the clean or the invalid records, in the same way as {@link DataCleansingService} does
+   * for the records written by the DataCleansingMapReduce.
+   */
+  public RecordDigest getDigest(boolean invalid) {
+    RecordDigest digest = new RecordDigest();
+    for (long pid = firstPid; pid <= getLastPid(); pid++) {
+      if (isInvalid(pid) == invalid) {
+        digest.add(getRecord(pid));
+      }
+    }
+    return digest;
+  }
+
+  /**
+   * @return the record with the given pid, in JSON
+   */
+  public String getRecord(long pid) {
+    String zip = isInvalid(pid) ? "84125q" : "84125";
+    return GSON.toJson(new Person(pid, "bob", "02-12-1983", zip));
+  }
+}
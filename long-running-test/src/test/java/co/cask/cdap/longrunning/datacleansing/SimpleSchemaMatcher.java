@@ -16,47 +16,545 @@
 
 package co.cask.cdap.longrunning.datacleansing;
 
-import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A schema matcher for flat-record schemas with simple (or nullable of simple) fields.
+ *
+ * The schema is compiled once into a validator for each field, and records are validated by scanning their JSON
+ * bytes, without building strings or JSON objects for them, and without throwing exceptions for invalid records.
+ * A matcher keeps the state of the record it is validating, so it must not be used by multiple threads at once.
  */
 public class SimpleSchemaMatcher {
 
-  private final Schema schema;
+  /**
+   * How the value of a field is validated, which follows how a string is converted to the type of the field.
+   */
+  private enum FieldType {
+    // any value that is not null converts to strings, booleans, bytes and nulls
+    ANY,
+    INT,
+    LONG,
+    FLOATING_POINT,
+    // complex types can't be converted from a string
+    UNSUPPORTED
+  }
+
+  private final byte[][] fieldNames;
+  private final FieldType[] fieldTypes;
+  private final boolean[] required;
+
+  // state of the record being validated
+  private final boolean[] seen;
+  // values of the int and long fields, so that they can be used without parsing the record again
+  private final long[] integerValues;
+  private final ByteCharSequence value;
+  private byte[] bytes;
+  private int pos;
+  private int end;
 
   public SimpleSchemaMatcher(Schema schema) {
-    this.schema = schema;
+    List<Schema.Field> fields = schema.getFields();
+    this.fieldNames = new byte[fields.size()][];
+    this.fieldTypes = new FieldType[fields.size()];
+    this.required = new boolean[fields.size()];
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      Schema fieldSchema = field.getSchema();
+      required[i] = !fieldSchema.isNullable();
+      fieldNames[i] = field.getName().getBytes(StandardCharsets.UTF_8);
+      fieldTypes[i] = getFieldType(fieldSchema.isNullable() && fieldSchema.getType() == Schema.Type.UNION
+                                     ? fieldSchema.getNonNullable() : fieldSchema);
+    }
+    this.seen = new boolean[fields.size()];
+    this.integerValues = new long[fields.size()];
+    this.value = new ByteCharSequence();
+  }
+
+  private static FieldType getFieldType(Schema schema) {
+    switch (schema.getType()) {
+      case STRING:
+      case BOOLEAN:
+      case BYTES:
+      case NULL:
+        return FieldType.ANY;
+      case INT:
+        return FieldType.INT;
+      case LONG:
+        return FieldType.LONG;
+      case FLOAT:
+      case DOUBLE:
+        return FieldType.FLOATING_POINT;
+      default:
+        return FieldType.UNSUPPORTED;
+    }
+  }
+
+  /**
+   * Determines whether or not this matcher's schema fits a piece of data.
+   *
+   * @param data a JSON string to check if the schema matches it
+   * @return true if the schema matches the given data
+   * @see #matches(byte[], int, int)
+   */
+  public boolean matches(String data) {
+    byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
+    return matches(dataBytes, 0, dataBytes.length);
   }
 
   /**
    * Determines whether or not this matcher's schema fits a piece of data.
    * A failure to match could arise from any of:
+   *  - the data is not a JSON object
+   *  - the data has a field that is not in the schema, or whose value is null, an object, or an array that does not
+   *    have exactly one value
    *  - a non-nullable field of the schema is missing from the data
    *  - a numerical field of the schema has non-numerical characters in it
    *  - the schema has non-simple types
    *
-   * @param data a JSON string to check if the schema matches it
+   * @param data the UTF-8 bytes of a JSON string to check if the schema matches it
+   * @param offset the offset of the JSON string in the bytes
+   * @param length the length of the JSON string
    * @return true if the schema matches the given data
    */
-  public boolean matches(String data) {
-    // rely on validations in the StructuredRecord's builder
+  public boolean matches(byte[] data, int offset, int length) {
+    bytes = data;
+    pos = offset;
+    end = offset + length;
+    Arrays.fill(seen, false);
+    Arrays.fill(integerValues, 0L);
     try {
-      JsonObject jsonObject = new JsonParser().parse(data).getAsJsonObject();
-      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
-      for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
-        builder.convertAndSet(entry.getKey(), entry.getValue().getAsString());
+      return matchObject();
+    } finally {
+      bytes = null;
+    }
+  }
+
+  private boolean matchObject() {
+    skipWhitespace();
+    if (!consume('{')) {
+      return false;
+    }
+    skipWhitespace();
+    if (!consume('}')) {
+      while (true) {
+        skipWhitespace();
+        int field = readFieldName();
+        if (field < 0) {
+          return false;
+        }
+        skipWhitespace();
+        if (!consume(':')) {
+          return false;
+        }
+        skipWhitespace();
+        if (!matchValue(field)) {
+          return false;
+        }
+        seen[field] = true;
+        skipWhitespace();
+        if (consume('}')) {
+          break;
+        }
+        if (!consume(',')) {
+          return false;
+        }
+      }
+    }
+    skipWhitespace();
+    if (pos != end) {
+      return false;
+    }
+    for (int i = 0; i < required.length; i++) {
+      if (required[i] && !seen[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads a quoted field name.
+   *
+   * @return the index of the field in the schema, or -1 if the name is not valid or not in the schema
+   */
+  private int readFieldName() {
+    if (!readString()) {
+      return -1;
+    }
+    if (value.escaped) {
+      // rare enough to materialize the name
+      byte[] name = value.toString().getBytes(StandardCharsets.UTF_8);
+      return indexOf(name, 0, name.length);
+    }
+    return indexOf(bytes, value.start, value.length);
+  }
+
+  private int indexOf(byte[] name, int offset, int length) {
+    for (int i = 0; i < fieldNames.length; i++) {
+      byte[] fieldName = fieldNames[i];
+      if (fieldName.length != length) {
+        continue;
+      }
+      int j = 0;
+      while (j < length && fieldName[j] == name[offset + j]) {
+        j++;
+      }
+      if (j == length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index of the field with the given name in the schema, or -1 if there is no such field
+   */
+  public int getFieldIndex(String name) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    return indexOf(nameBytes, 0, nameBytes.length);
+  }
+
+  /**
+   * @return whether the last record that matched has a value for the given field, and the field is an int or long
+   */
+  public boolean hasIntegerValue(int field) {
+    return seen[field] && (fieldTypes[field] == FieldType.INT || fieldTypes[field] == FieldType.LONG);
+  }
+
+  /**
+   * Returns the value of an int or long field of the last record that matched.
+   *
+   * @param field the index of the field, from {@link #getFieldIndex(String)}
+   * @return the value of the field, or 0 if the record does not have it
+   */
+  public long getIntegerValue(int field) {
+    return integerValues[field];
+  }
+
+  private boolean matchValue(int field) {
+    if (pos >= end) {
+      return false;
+    }
+    byte b = bytes[pos];
+    if (b == '"') {
+      if (!readString()) {
+        return false;
+      }
+    } else if (b == '-' || (b >= '0' && b <= '9')) {
+      if (!readNumber()) {
+        return false;
+      }
+    } else if (b == 't') {
+      if (!readLiteral("true")) {
+        return false;
+      }
+    } else if (b == 'f') {
+      if (!readLiteral("false")) {
+        return false;
+      }
+    } else if (b == '[') {
+      // like a JSON array converted to a string, an array with a single value is treated as that value
+      pos++;
+      skipWhitespace();
+      if (!matchValue(field)) {
+        return false;
+      }
+      skipWhitespace();
+      return consume(']');
+    } else {
+      // null has no string value, and objects are not simple values
+      return false;
+    }
+
+    CharSequence text = value.escaped ? value.toString() : value;
+    switch (fieldTypes[field]) {
+      case ANY:
+        return true;
+      case INT:
+        return parseInteger(text, field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      case LONG:
+        return parseInteger(text, field, Long.MIN_VALUE, Long.MAX_VALUE);
+      case FLOATING_POINT:
+        return isFloatingPoint(text);
+      default:
+        return false;
+    }
+  }
+
+  // reads a quoted string, setting the value to its contents
+  private boolean readString() {
+    if (!consume('"')) {
+      return false;
+    }
+    int start = pos;
+    boolean escaped = false;
+    while (pos < end) {
+      byte b = bytes[pos];
+      if (b == '"') {
+        value.set(bytes, start, pos - start, escaped);
+        pos++;
+        return true;
       }
-      builder.build();
+      if (b == '\\') {
+        escaped = true;
+        pos++;
+        if (pos >= end) {
+          return false;
+        }
+        byte escape = bytes[pos];
+        if (escape == 'u') {
+          for (int i = 1; i <= 4; i++) {
+            if (pos + i >= end || Character.digit(bytes[pos + i], 16) < 0) {
+              return false;
+            }
+          }
+          pos += 4;
+        } else if ("\"\\/bfnrt".indexOf(escape) < 0) {
+          return false;
+        }
+      }
+      pos++;
+    }
+    return false;
+  }
+
+  // reads a JSON number, setting the value to its text
+  private boolean readNumber() {
+    int start = pos;
+    consume('-');
+    if (consume('0')) {
+      // no leading zeros
+    } else if (!consumeDigits()) {
+      return false;
+    }
+    if (consume('.') && !consumeDigits()) {
+      return false;
+    }
+    if (consume('e') || consume('E')) {
+      if (!consume('+')) {
+        consume('-');
+      }
+      if (!consumeDigits()) {
+        return false;
+      }
+    }
+    value.set(bytes, start, pos - start, false);
+    return true;
+  }
+
+  private boolean readLiteral(String literal) {
+    if (end - pos < literal.length()) {
+      return false;
+    }
+    for (int i = 0; i < literal.length(); i++) {
+      if (bytes[pos + i] != literal.charAt(i)) {
+        return false;
+      }
+    }
+    value.set(bytes, pos, literal.length(), false);
+    pos += literal.length();
+    return true;
+  }
+
+  private boolean consumeDigits() {
+    int start = pos;
+    while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+      pos++;
+    }
+    return pos > start;
+  }
+
+  private boolean consume(char c) {
+    if (pos < end && bytes[pos] == c) {
+      pos++;
       return true;
-    } catch (Exception e) {
+    }
+    return false;
+  }
+
+  private void skipWhitespace() {
+    while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\n' || bytes[pos] == '\r')) {
+      pos++;
+    }
+  }
+
+  /**
+   * Whether the text is accepted by {@link Long#parseLong(String)} and within the given range. If it is, its value
+   * is kept as the value of the given field.
+   */
+  private boolean parseInteger(CharSequence text, int field, long min, long max) {
+    int length = text.length();
+    int i = 0;
+    boolean negative = false;
+    if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+      negative = text.charAt(0) == '-';
+      i++;
+    }
+    if (i == length) {
       return false;
     }
+    // accumulate negatively, since the negative range is larger
+    long limit = negative ? min : -max;
+    long result = 0;
+    for (; i < length; i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+      int digit = c - '0';
+      if (result < limit / 10 || result * 10 < limit + digit) {
+        return false;
+      }
+      result = result * 10 - digit;
+    }
+    integerValues[field] = negative ? result : -result;
+    return true;
+  }
+
+  /**
+   * Whether the text is a decimal number or a special value accepted by {@link Double#parseDouble(String)}.
+   * Hexadecimal floating-point numbers are not accepted.
+   */
+  private static boolean isFloatingPoint(CharSequence text) {
+    int start = 0;
+    int length = text.length();
+    // parseDouble ignores leading and trailing whitespace
+    while (start < length && text.charAt(start) <= ' ') {
+      start++;
+    }
+    while (length > start && text.charAt(length - 1) <= ' ') {
+      length--;
+    }
+    int i = start;
+    if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+      i++;
+    }
+    if (regionEquals(text, i, length, "NaN") || regionEquals(text, i, length, "Infinity")) {
+      return true;
+    }
+    int digits = 0;
+    while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+      i++;
+      digits++;
+    }
+    if (i < length && text.charAt(i) == '.') {
+      i++;
+      while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+        i++;
+      }
+      int exponentStart = i;
+      while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+        i++;
+      }
+      if (i == exponentStart) {
+        return false;
+      }
+    }
+    if (i < length && "fFdD".indexOf(text.charAt(i)) >= 0) {
+      i++;
+    }
+    return i == length;
+  }
+
+  private static boolean regionEquals(CharSequence text, int start, int end, String expected) {
+    if (end - start != expected.length()) {
+      return false;
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      if (text.charAt(start + i) != expected.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A view of a range of bytes as characters, which is reused for every value. Bytes are mapped to characters
+   * one to one, which is only correct for ASCII, so that non-ASCII values never look numerical. Values with
+   * escape sequences are decoded when they are converted to a string.
+   */
+  private static final class ByteCharSequence implements CharSequence {
+    private byte[] bytes;
+    private int start;
+    private int length;
+    private boolean escaped;
+
+    private void set(byte[] bytes, int start, int length, boolean escaped) {
+      this.bytes = bytes;
+      this.start = start;
+      this.length = length;
+      this.escaped = escaped;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes[start + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      return toString().substring(from, to);
+    }
+
+    @Override
+    public String toString() {
+      String raw = new String(bytes, start, length, StandardCharsets.UTF_8);
+      if (!escaped) {
+        return raw;
+      }
+      StringBuilder builder = new StringBuilder(raw.length());
+      for (int i = 0; i < raw.length(); i++) {
+        char c = raw.charAt(i);
+        if (c != '\\') {
+          builder.append(c);
+          continue;
+        }
+        char escape = raw.charAt(++i);
+        switch (escape) {
+          case 'b':
+            builder.append('\b');
+            break;
+          case 'f':
+            builder.append('\f');
+            break;
+          case 'n':
+            builder.append('\n');
+            break;
+          case 'r':
+            builder.append('\r');
+            break;
+          case 't':
+            builder.append('\t');
+            break;
+          case 'u':
+            builder.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+            i += 4;
+            break;
+          default:
+            builder.append(escape);
+        }
+      }
+      return builder.toString();
+    }
   }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.longrunning.datacleansing;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Tests that {@link SimpleSchemaMatcher} matches the same records as the {@link StructuredRecord} based matcher
+ * that it replaced.
+ */
+public class SimpleSchemaMatcherTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("zip", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("score", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("active", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+    Schema.Field.of("note", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  @Test
+  public void testValidRecords() {
+    assertMatches(true,
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5, \"active\": true, \"note\": \"n\"}",
+                  " {\n\t\"score\" : 2 ,\"zip\":\"84125\", \"name\" : 12, \"id\" : -7 } \r\n",
+                  // values are converted from their string, like the fields of a StructuredRecord
+                  "{\"id\": \"1\", \"name\": false, \"zip\": \"+1\", \"score\": \"NaN\", \"active\": \"yes\"}",
+                  "{\"id\": 9223372036854775807, \"name\": \"a\", \"zip\": -2147483648, \"score\": -1.5e-3}",
+                  // an array with a single value is treated as that value
+                  "{\"id\": [1], \"name\": [\"a\"], \"zip\": [ 84125 ], \"score\": [1]}");
+  }
+
+  @Test
+  public void testMissingAndExtraFields() {
+    assertMatches(false,
+                  "{}",
+                  "{\"name\": \"a\", \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5, \"other\": 1}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5, \"Note\": \"n\"}");
+  }
+
+  @Test
+  public void testNulls() {
+    // null has no string value, so it does not match even nullable fields
+    assertMatches(false,
+                  "{\"id\": 1, \"name\": null, \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5, \"note\": null}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": [null], \"score\": 1.5}",
+                  "null");
+  }
+
+  @Test
+  public void testEscapes() {
+    assertMatches(true,
+                  "{\"id\": 1, \"name\": \"a\\\"b\\\\c\\/d\\u00e9\\n\\t\", \"zip\": 84125, \"score\": 1.5}",
+                  "{\"i\\u0064\": 1, \"n\\u0061me\": \"a\", \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": \"\\u0038\\u0034\", \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"\u00e9\u4e2d\", \"zip\": 84125, \"score\": 1.5}");
+    assertMatches(false, "{\"id\": 1, \"name\": \"a\", \"zip\": \"8\\u0041\", \"score\": 1.5}");
+  }
+
+  @Test
+  public void testNestedValues() {
+    assertMatches(false,
+                  "{\"id\": 1, \"name\": {\"first\": \"a\"}, \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": [\"a\", \"b\"], \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": [], \"zip\": 84125, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": {}, \"zip\": 84125, \"score\": 1.5}",
+                  "[{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5}]");
+  }
+
+  @Test
+  public void testInvalidNumbers() {
+    assertMatches(false,
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": \"84125q\", \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 2147483648, \"score\": 1.5}",
+                  "{\"id\": 9223372036854775808, \"name\": \"a\", \"zip\": 1, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 1.0, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 1e3, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": true, \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": \" 1\", \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": \"\", \"score\": 1.5}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 1, \"score\": \"abc\"}");
+  }
+
+  @Test
+  public void testDifferences() {
+    // the replaced matcher parsed the records leniently, and accepted the numbers that Integer.parseInt and
+    // Double.parseDouble accept, such as non-ASCII digits and hexadecimal floating-point numbers. None of them
+    // are written by the RecordGenerator
+    SimpleSchemaMatcher matcher = new SimpleSchemaMatcher(SCHEMA);
+    for (String record : new String[] {
+      "{id: 1, 'name': 'a', \"zip\": 84125, \"score\": 1.5}",
+      "{\"id\": 1, \"name\": \"a\", \"zip\": \"\\u0661\", \"score\": 1.5}",
+      "{\"id\": 1, \"name\": \"a\", \"zip\": 1, \"score\": \"0x1p3\"}"
+    }) {
+      Assert.assertTrue(record, matchesWithStructuredRecord(SCHEMA, record));
+      Assert.assertFalse(record, matcher.matches(record));
+    }
+  }
+
+  @Test
+  public void testMalformedRecords() {
+    assertMatches(false,
+                  "",
+                  "{",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5,}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5} {}",
+                  "{\"id\": 1, \"name\": \"a\", \"zip\": 84125, \"score\": 1.5, \"note\": \"n}");
+  }
+
+  @Test
+  public void testGeneratedRecords() {
+    RecordGenerator generator = new RecordGenerator(1, 2, 10, 3);
+    Schema schema = DataCleansingMapReduce.SchemaMatchingFilter.DEFAULT_SCHEMA;
+    SimpleSchemaMatcher matcher = new SimpleSchemaMatcher(schema);
+    int zipField = matcher.getFieldIndex("zip");
+    for (long pid = 1; pid <= generator.getLastPid(); pid++) {
+      String record = generator.getRecord(pid);
+      Assert.assertEquals(record, !generator.isInvalid(pid), matchesWithStructuredRecord(schema, record));
+      byte[] bytes = ("  " + record + "\n").getBytes(StandardCharsets.UTF_8);
+      Assert.assertEquals(record, !generator.isInvalid(pid), matcher.matches(bytes, 2, bytes.length - 3));
+      if (!generator.isInvalid(pid)) {
+        Assert.assertTrue(matcher.hasIntegerValue(zipField));
+        Assert.assertEquals(84125L, matcher.getIntegerValue(zipField));
+      }
+    }
+  }
+
+  private static void assertMatches(boolean expected, String... records) {
+    // the matcher is reused, like it is by the mapper
+    SimpleSchemaMatcher matcher = new SimpleSchemaMatcher(SCHEMA);
+    for (String record : records) {
+      Assert.assertEquals(record, expected, matchesWithStructuredRecord(SCHEMA, record));
+      Assert.assertEquals(record, expected, matcher.matches(record));
+    }
+  }
+
+  /**
+   * The matcher that {@link SimpleSchemaMatcher} replaced, which relies on the validations of the
+   * {@link StructuredRecord.Builder}.
+   */
+  private static boolean matchesWithStructuredRecord(Schema schema, String data) {
+    try {
+      JsonObject jsonObject = new JsonParser().parse(data).getAsJsonObject();
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+        builder.convertAndSet(entry.getKey(), entry.getValue().getAsString());
+      }
+      builder.build();
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link DeltaEncodedLongs}.
+ */
+public class DeltaEncodedLongsTest {
+
+  @Test
+  public void testEmpty() {
+    assertRoundTrip();
+  }
+
+  @Test
+  public void testOrderIsKept() {
+    assertRoundTrip(5L, 3L, 9L, 1L);
+    assertRoundTrip(1000L, 999L, 998L, 997L);
+  }
+
+  @Test
+  public void testDuplicates() {
+    assertRoundTrip(7L, 7L, 7L);
+    assertRoundTrip(1L, 2L, 1L, 2L, 2L);
+  }
+
+  @Test
+  public void testNegativeValues() {
+    assertRoundTrip(-1L);
+    assertRoundTrip(-5L, 3L, -100L, 0L);
+  }
+
+  @Test
+  public void testExtremeValues() {
+    assertRoundTrip(Long.MIN_VALUE);
+    assertRoundTrip(Long.MAX_VALUE);
+    // the differences between these overflow
+    assertRoundTrip(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 0L, Long.MAX_VALUE);
+    assertRoundTrip(Long.MAX_VALUE, -1L, Long.MIN_VALUE + 1, 1L);
+  }
+
+  @Test
+  public void testRandomValues() {
+    Random random = new Random(0L);
+    for (int i = 0; i < 100; i++) {
+      long[] values = new long[random.nextInt(50)];
+      for (int j = 0; j < values.length; j++) {
+        values[j] = random.nextBoolean() ? random.nextLong() : random.nextInt(1000);
+      }
+      assertRoundTrip(values);
+    }
+  }
+
+  @Test
+  public void testCloseValuesAreCompact() {
+    long[] values = new long[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = 1550000000000000000L + i * 3;
+    }
+    String encoded = DeltaEncodedLongs.encode(values);
+    // the first value takes nine bytes and every other value one byte, which is four characters in Base64 per three
+    Assert.assertTrue("Encoding is too long: " + encoded.length(), encoded.length() < 1400);
+    Assert.assertArrayEquals(values, DeltaEncodedLongs.decode(encoded));
+  }
+
+  @Test
+  public void testInputIsNotModified() {
+    long[] values = { 3L, 1L, 2L };
+    DeltaEncodedLongs.encode(values);
+    Assert.assertArrayEquals(new long[] { 3L, 1L, 2L }, values);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncated() {
+    String encoded = DeltaEncodedLongs.encode(new long[] { 1L, Long.MAX_VALUE });
+    DeltaEncodedLongs.decode(encoded.substring(0, encoded.length() - 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTrailingBytes() {
+    DeltaEncodedLongs.decode(DeltaEncodedLongs.encode(new long[] { 1L, 2L }) + "AA");
+  }
+
+  private static void assertRoundTrip(long... values) {
+    Assert.assertArrayEquals(values, DeltaEncodedLongs.decode(DeltaEncodedLongs.encode(values)));
+  }
+}
@@ -17,6 +17,7 @@
 package co.cask.cdap.test.suite;
 
 import co.cask.cdap.test.LongRunningTestBase;
+import co.cask.cdap.test.StateJournal;
 import co.cask.cdap.test.runner.AutoSuiteRunner;
 import com.google.common.base.Preconditions;
 import com.google.common.reflect.TypeToken;
@@ -29,21 +30,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.lang.reflect.Type;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Suite to run all long running tests for CDAP
+ * Suite to run all long running tests for CDAP. The tests run concurrently, since they mostly wait for programs.
  */
 @RunWith(AutoSuiteRunner.class)
 @AutoSuiteRunner.Matches(packages = "co.cask.cdap.longrunning")
+@AutoSuiteRunner.Parallel
 public class LongRunningTestRunner {
   private static final Logger LOG = LoggerFactory.getLogger(LongRunningTestRunner.class);
   private static final String INPUT_STATE_PROP = "input.state";
   private static final String OUTPUT_STATE_PROP = "output.state";
+  private static final String STATE_JOURNAL_PROP = "state.journal";
+  private static final String STATE_JOURNAL_COMPACTION_PROP = "state.journal.compaction.records";
   private static final Gson GSON = new Gson();
+  private static StateJournal stateJournal;
 
   @BeforeClass
   public static void deserialize() throws Exception {
@@ -65,7 +71,14 @@ public class LongRunningTestRunner {
       inMemoryMap = new HashMap<>();
     }
     LOG.info("Deserialized test input state = {}", inMemoryMap);
-    LongRunningTestBase.initializeInMemoryMap(inMemoryMap);
+
+    // the journal has the states of a previous run that did not complete, if any
+    String journalFile = System.getProperty(STATE_JOURNAL_PROP, outputStateFile + ".journal");
+    stateJournal = new StateJournal(Paths.get(journalFile), Integer.getInteger(STATE_JOURNAL_COMPACTION_PROP, 100));
+    stateJournal.recover(inMemoryMap);
+    // the tests update their states concurrently
+    LongRunningTestBase.initializeInMemoryMap(new ConcurrentHashMap<>(inMemoryMap));
+    LongRunningTestBase.initializeStateJournal(stateJournal);
   }
 
   @AfterClass
@@ -73,9 +86,8 @@ public class LongRunningTestRunner {
     Map<String, String> inMemoryMap = LongRunningTestBase.getInMemoryMap();
     LOG.info("Test output state to serialize = {}", inMemoryMap);
     String outputStateFile = System.getProperty(OUTPUT_STATE_PROP);
-    try (FileWriter writer = new FileWriter(outputStateFile)) {
-      LOG.info("Serializing test state to output file = {}", outputStateFile);
-      GSON.toJson(inMemoryMap, writer);
-    }
+    LOG.info("Serializing test state to output file = {}", outputStateFile);
+    stateJournal.complete(inMemoryMap, Paths.get(outputStateFile));
+    LongRunningTestBase.initializeStateJournal(null);
   }
 }